@@ -0,0 +1,109 @@
+package com.sportinggoods.bench;
+
+import com.sportinggoods.controller.CheckoutEngine;
+import com.sportinggoods.model.*;
+import com.sportinggoods.repository.CouponRepository;
+import com.sportinggoods.repository.ReceiptRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the multi-register checkout engine: sales per second with every lane
+ * selling from the same store inventory. Each invocation submits a batch of sales round
+ * robin across the lanes and waits for all of them, so the reported ops/s is completed
+ * sales per second. After each iteration the engine's own measurement is printed, with
+ * whether it meets checkout.targetSalesPerSecond.
+ *
+ * Run from the repository root:
+ *   ./gradlew :bench:jmh -PjmhArgs="CheckoutBenchmark"
+ *   ./gradlew :bench:jmh -PjmhArgs="CheckoutBenchmark -p lanes=8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBenchmark {
+    private static final int SALES_PER_INVOCATION = 256;
+    private static final int BASKETS = 4096; // Power of two, so baskets are picked with a mask
+
+    @Param({"32"})
+    public int lanes;
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    private CheckoutEngine engine;
+    private Customer customer;
+    private List<Map<Item, Integer>> baskets;
+    private int call;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FixtureGenerator.generate(catalogSize, 1000, FixtureGenerator.DEFAULT_SEED);
+
+        // The code under test reports every sale on System.out; keep it out of the results
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Inventory inventory = new Inventory(FixtureGenerator.STORE_ID);
+        engine = new CheckoutEngine(null, inventory, new ReceiptRepository(), new CouponRepository(), lanes);
+        customer = new Customer("Bench", 1);
+
+        // Baskets of one to three items picked up front with a fixed seed; lanes share items
+        Random random = new Random(FixtureGenerator.DEFAULT_SEED);
+        baskets = new ArrayList<>(BASKETS);
+        for (int i = 0; i < BASKETS; i++) {
+            Map<Item, Integer> basket = new LinkedHashMap<>();
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                basket.merge(inventory.getItem(FixtureGenerator.itemName(random.nextInt(catalogSize))), 1, Integer::sum);
+            }
+            baskets.add(basket);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        engine.resetThroughput();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        console.println();
+        console.println(engine + (engine.meetsThroughputTarget() ? ", meets target" : ", below target"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown(30);
+        Inventory.flush();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SALES_PER_INVOCATION)
+    public int sales() throws Exception {
+        List<Future<Receipt>> sales = new ArrayList<>(SALES_PER_INVOCATION);
+        for (int i = 0; i < SALES_PER_INVOCATION; i++) {
+            sales.add(engine.submitSale(customer, baskets.get(call++ & (BASKETS - 1)), "Card", null));
+        }
+        int completed = 0;
+        for (Future<Receipt> sale : sales) {
+            if (sale.get() != null) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+}
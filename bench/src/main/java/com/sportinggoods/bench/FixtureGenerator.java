@@ -0,0 +1,112 @@
+package com.sportinggoods.bench;
+
+import com.sportinggoods.util.FileUtils;
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a synthetic data/ directory for benchmarks, so results are reproducible offline.
+ * The same catalog size, history length and seed always produce the same files.
+ * The benchmarks call it before each run; it can also be run on its own from the
+ * directory that should receive data/, with [catalogSize] [historyLength] [seed].
+ */
+public class FixtureGenerator {
+    public static final int STORE_ID = 1;
+    public static final String[] DEPARTMENTS = {"Fitness", "Team Sports", "Outdoor", "Footwear", "Apparel", "Water Sports"};
+    public static final long DEFAULT_SEED = 362L;
+
+    /**
+     * @return The name of the i-th generated item.
+     */
+    public static String itemName(int i) {
+        return "Item " + i;
+    }
+
+    /**
+     * Generates every fixture file under data/, replacing existing ones.
+     *
+     * @param catalogSize   Number of items in the store's inventory.
+     * @param historyLength Number of past receipts and shipping orders.
+     * @param seed          Random seed.
+     */
+    public static void generate(int catalogSize, int historyLength, long seed) {
+        Random random = new Random(seed);
+        new File("data").mkdirs();
+
+        // Inventory: enough stock that measured sales never run out
+        List<String> inventory = new ArrayList<>();
+        inventory.add("name,price,department,quantity,storeID");
+        double[] prices = new double[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            prices[i] = 5 + random.nextInt(200);
+            inventory.add(itemName(i) + "," + prices[i] + "," + DEPARTMENTS[i % DEPARTMENTS.length] + ",1000000," + STORE_ID);
+        }
+        FileUtils.writeAllLines("data/inventory.csv", inventory);
+
+        // Receipts: 1-4 line items each, spread over 100 customers
+        List<String> receipts = new ArrayList<>();
+        receipts.add("receiptId,customerId,lineItems,totalCost,date,couponCode,couponDiscount");
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int id = 1; id <= historyLength; id++) {
+            StringBuilder lineItems = new StringBuilder();
+            double total = 0.0;
+            int lines = 1 + random.nextInt(4);
+            for (int l = 0; l < lines; l++) {
+                int item = random.nextInt(catalogSize);
+                int quantity = 1 + random.nextInt(3);
+                if (lineItems.length() > 0) {
+                    lineItems.append('|');
+                }
+                lineItems.append(itemName(item)).append(';').append(quantity).append(';').append(prices[item]).append(";0.0");
+                total += prices[item] * quantity;
+            }
+            receipts.add(id + "," + (1 + random.nextInt(100)) + "," + lineItems + "," + total + ","
+                    + start.plusDays(id % 365) + ",,0.0");
+        }
+        FileUtils.writeAllLines("data/receipts.csv", receipts);
+
+        // Shipping orders in the pipe-separated format read by ShippingOrder.fromCSV
+        List<String> orders = new ArrayList<>();
+        orders.add("orderId,storeId,customerFirstName,customerLastName,items,totalPrice,shippingAddress,customerEmail,customerPhoneNumber,orderDate,status");
+        String[] statuses = {"Pending", "Partially Shipped", "Shipped"};
+        for (int i = 0; i < historyLength; i++) {
+            int item = random.nextInt(catalogSize);
+            int quantity = 1 + random.nextInt(5);
+            orders.add(new java.util.UUID(seed, i) + "|" + (1 + random.nextInt(3)) + "|First" + i + "|Last" + i + "|"
+                    + itemName(item) + "," + prices[item] + "," + DEPARTMENTS[item % DEPARTMENTS.length] + "," + quantity + ";|"
+                    + prices[item] * quantity + "|" + i + " Main Street|customer" + i + "@example.com|5155550000|"
+                    + start.plusDays(i % 365) + "|" + statuses[random.nextInt(statuses.length)]);
+        }
+        FileUtils.writeAllLines("data/shippingOrder.csv", orders);
+
+        // One discount per department plus a store-wide one, so every price lookup has rules to apply
+        List<String> discounts = new ArrayList<>();
+        discounts.add("target,value,type");
+        for (String department : DEPARTMENTS) {
+            discounts.add(department + "," + (5 + random.nextInt(20)) + ",PERCENTAGE");
+        }
+        discounts.add("Store-Wide,2.0,FIXED");
+        FileUtils.writeAllLines("data/discounts.csv", discounts);
+
+        List<String> coupons = new ArrayList<>();
+        coupons.add("code,discountType,discountValue,expirationDate");
+        coupons.add("BENCH10,PERCENTAGE,10.00,2099-12-31");
+        FileUtils.writeAllLines("data/coupons.csv", coupons);
+
+        // Derived files are rebuilt from the fixtures on first use
+        new File("data/receipt_index.csv").delete();
+        new File("data/inventory_journal.csv").delete();
+        new File("data/original_prices.csv").delete();
+    }
+
+    public static void main(String[] args) {
+        int catalogSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int historyLength = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        generate(catalogSize, historyLength, seed);
+        System.out.println("Generated fixtures in data/ (catalog " + catalogSize + ", history " + historyLength + ", seed " + seed + ")");
+    }
+}
@@ -0,0 +1,149 @@
+package com.sportinggoods.bench;
+
+import com.sportinggoods.controller.CashierController;
+import com.sportinggoods.controller.RegisterController;
+import com.sportinggoods.model.*;
+import com.sportinggoods.repository.CouponRepository;
+import com.sportinggoods.repository.DiscountRepository;
+import com.sportinggoods.repository.ReceiptRepository;
+import com.sportinggoods.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the repository and checkout hot paths, run against generated fixtures.
+ * The data files are loaded into static state once per JVM, so every benchmark and
+ * parameter set runs in its own fork, with fresh fixtures written before it starts.
+ *
+ * Run from the repository root:
+ *   ./gradlew :bench:jmh
+ *   ./gradlew :bench:jmh -PjmhArgs="HotPathBenchmark.processSale -p catalogSize=10000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmark {
+    private static final int INPUTS = 4096; // Power of two, so inputs are picked with a mask
+
+    @Param({"1000", "10000"})
+    public int catalogSize;
+
+    @Param({"10000", "100000"})
+    public int historyLength;
+
+    private Inventory inventory;
+    private DiscountRepository discountRepo;
+    private ReceiptRepository receiptRepo;
+    private CashierController cashier;
+    private Customer customer;
+    private String[] names;
+    private Item[] items;
+    private int[] customerIds;
+    private List<String> itemLines;
+    private List<String> orderLines;
+    private int call;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FixtureGenerator.generate(catalogSize, historyLength, FixtureGenerator.DEFAULT_SEED);
+
+        // The code under test reports progress on System.out; keep it out of the results
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        inventory = new Inventory(FixtureGenerator.STORE_ID);
+        discountRepo = new DiscountRepository();
+        receiptRepo = new ReceiptRepository();
+        cashier = new CashierController(null, inventory,
+                new RegisterController(new Register()), receiptRepo, new CouponRepository());
+        customer = new Customer("Bench", 1);
+
+        // Inputs picked up front with a fixed seed so every run sees the same sequence
+        Random random = new Random(FixtureGenerator.DEFAULT_SEED);
+        names = new String[INPUTS];
+        items = new Item[INPUTS];
+        customerIds = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            names[i] = FixtureGenerator.itemName(random.nextInt(catalogSize));
+            items[i] = inventory.getItem(names[i]);
+            customerIds[i] = 1 + random.nextInt(100);
+        }
+        itemLines = FileUtils.readAllLines("data/inventory.csv");
+        orderLines = FileUtils.readAllLines("data/shippingOrder.csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Inventory.flush();
+        System.setOut(console);
+    }
+
+    private int next() {
+        return call++ & Integer.MAX_VALUE;
+    }
+
+    @Benchmark
+    public int getItem() {
+        return inventory.getItem(names[next() & (INPUTS - 1)]).getQuantity();
+    }
+
+    @Benchmark
+    public void updateQuantity() {
+        int i = next();
+        // Alternate decrement and increment so stock stays level
+        inventory.updateQuantity(names[i & (INPUTS - 1)], (i & 1) == 0 ? -1 : 1);
+    }
+
+    @Benchmark
+    public double getEffectivePrice() {
+        return discountRepo.getEffectivePrice(items[next() & (INPUTS - 1)]);
+    }
+
+    @Benchmark
+    public int logReceipt() {
+        int i = next() & (INPUTS - 1);
+        List<ReceiptLineItem> lineItems = new ArrayList<>();
+        lineItems.add(new ReceiptLineItem(names[i], 1, items[i].getPrice()));
+        Receipt receipt = new Receipt(customer, null, lineItems, items[i].getPrice(), LocalDate.now());
+        receiptRepo.logReceipt(receipt);
+        return receipt.getReceiptId();
+    }
+
+    @Benchmark
+    public boolean hasReceiptForReturn() {
+        int i = next() & (INPUTS - 1);
+        return receiptRepo.hasReceiptForReturn(customerIds[i], names[i], 1);
+    }
+
+    @Benchmark
+    public Item itemFromCsv() {
+        return Item.fromCSV(itemLines.get(1 + next() % (itemLines.size() - 1)));
+    }
+
+    @Benchmark
+    public ShippingOrder shippingOrderFromCsv() {
+        return ShippingOrder.fromCSV(orderLines.get(1 + next() % (orderLines.size() - 1)));
+    }
+
+    @Benchmark
+    public Receipt processSale() {
+        int i = next();
+        Map<Item, Integer> basket = new LinkedHashMap<>();
+        basket.put(items[i & (INPUTS - 1)], 1);
+        basket.put(items[(i + 1) & (INPUTS - 1)], 2);
+        return cashier.processSale(customer, basket, "Card", (i & 3) == 0 ? "BENCH10" : null);
+    }
+}
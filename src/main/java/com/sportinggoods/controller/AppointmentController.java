@@ -2,7 +2,9 @@ package com.sportinggoods.controller;
 
 import com.sportinggoods.model.Appointment;
 import com.sportinggoods.repository.AppointmentRepository;
+import com.sportinggoods.repository.AppointmentSlotIndex;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -18,13 +20,34 @@ public class AppointmentController {
         String appointmentId = UUID.randomUUID().toString();
         Appointment appointment = new Appointment(appointmentId, storeId, customerName, phoneNumber, itemName,
                 issue, appointmentDate, appointmentTime, "Scheduled");
-        return appointmentRepo.addAppointment(appointment);
+        return appointmentRepo.bookAppointment(appointment);
+    }
+
+    public List<String> getBookedTimes(int storeId, String appointmentDate) {
+        return appointmentRepo.getBookedTimes(storeId, appointmentDate);
+    }
+
+    public List<String> getFreeTimes(int storeId, String appointmentDate) {
+        return appointmentRepo.getFreeTimes(storeId, appointmentDate);
+    }
+
+    /**
+     * Finds the earliest free slot from now on, at this store or any other, within two weeks.
+     */
+    public AppointmentSlotIndex.FreeSlot findEarliestFreeSlot(int storeId) {
+        return appointmentRepo.findEarliestFreeSlot(storeId, LocalDateTime.now(), 14);
     }
 
     public boolean addToWaitlist(int storeId, String customerName, String phoneNumber, String itemName, String issue) {
         return appointmentRepo.addToWaitlist(storeId, customerName, phoneNumber, itemName, issue);
     }
 
+    public boolean addToWaitlist(int storeId, String customerName, String phoneNumber, String itemName, String issue,
+                                 String appointmentDate, String appointmentTime) {
+        return appointmentRepo.addToWaitlist(storeId, customerName, phoneNumber, itemName, issue,
+                appointmentDate, appointmentTime);
+    }
+
     public boolean removeFromWaitlist(Appointment appointment) {
         return appointmentRepo.removeFromWaitlist(appointment);
     }
@@ -40,20 +63,7 @@ public class AppointmentController {
 
 
     public boolean updateAppointmentStatus(String appointmentId, String newStatus) {
-
-        List<Appointment> appointments = appointmentRepo.getAllAppointments();
-
-
-        for (Appointment appointment : appointments) {
-            if (appointment.getAppointmentId().equals(appointmentId)) {
-                // Update the status
-                appointment.setStatus(newStatus);
-
-                // Save changes to the repository
-                return appointmentRepo.updateAppointments(appointments);
-            }
-        }
-
-        return false;
+        // The repository also frees or reclaims the appointment's slot
+        return appointmentRepo.updateAppointmentStatus(appointmentId, newStatus);
     }
 }
@@ -3,7 +3,10 @@ package com.sportinggoods.controller;
 import com.sportinggoods.model.*;
 import com.sportinggoods.repository.CouponRepository;
 import com.sportinggoods.repository.ReceiptRepository;
+import com.sportinggoods.util.IdAllocator;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -15,6 +18,7 @@ public class CashierController {
     private RegisterController registerController;
     private ReceiptRepository receiptRepo;
     private CouponRepository couponRepo;
+    private IdAllocator.IdBlock receiptIds; // Optional, set when this register reserves its own IDs
 
     public CashierController(Cashier cashier, Inventory inventory, RegisterController registerController, ReceiptRepository receiptRepo, CouponRepository couponRepo) {
         this.cashier = cashier;
@@ -32,7 +36,9 @@ public class CashierController {
     }
 
     /**
-     * Processes a multi-item sale.
+     * Processes a multi-item sale as one transaction. The whole basket is checked first,
+     * then all stock is taken together; if any item is short, the payment fails or the
+     * receipt cannot be saved, no stock is changed and any payment taken is refunded.
      *
      * @param customer      The customer making the purchase.
      * @param items         A map of items and their quantities.
@@ -41,48 +47,68 @@ public class CashierController {
      */
     public Receipt processSale(Customer customer, Map<Item, Integer> items, String paymentMethod, String couponCode) {
         double totalCost = 0.0;
-        StringBuilder receiptDetails = new StringBuilder();
+        List<ReceiptLineItem> lineItems = new ArrayList<>();
 
-        // Calculate total cost and build receipt details
+        // Validate the whole basket and build receipt line items before changing anything
         for (Map.Entry<Item, Integer> entry : items.entrySet()) {
             Item item = entry.getKey();
             int quantity = entry.getValue();
 
-            if (inventory.checkAvailability(item.getName(), quantity)) {
-                double itemCost = item.getPrice() * quantity;
-                totalCost += itemCost;
-                receiptDetails.append(item.getName()).append(": ").append(quantity).append(" x $").append(item.getPrice()).append(" each, ");
-
-                // Update inventory for each item
-                inventory.updateQuantity(item.getName(), -quantity);
-            } else {
+            if (!inventory.checkAvailability(item.getName(), quantity)) {
                 System.out.println("Item " + item.getName() + " is out of stock or insufficient quantity.");
                 return null; // Exit if any item is unavailable
             }
+            totalCost += item.getPrice() * quantity;
+            lineItems.add(new ReceiptLineItem(item.getName(), quantity, item.getPrice()));
         }
 
         // Apply coupon
-        double discount = applyCoupon(couponCode, totalCost, receiptDetails);
+        double discount = applyCoupon(couponCode, totalCost);
 
         // Adjust total cost with discount
         totalCost -= discount;
 
-        // Remove trailing comma and space from receipt details
-        if (receiptDetails.length() > 0) {
-            receiptDetails.setLength(receiptDetails.length() - 2);
+        // Take the stock for every item at once; fails as a whole if another sale got there first
+        Map<String, Integer> stockChanges = stockChanges(items, -1);
+        if (!inventory.commitQuantityChanges(stockChanges)) {
+            System.out.println("Some items are no longer available. Sale cancelled.");
+            return null;
         }
 
         // Process single payment for the entire cart
-        if (registerController.processPayment(totalCost, paymentMethod)) {
-            Receipt receipt = new Receipt(customer, cashier, receiptDetails.toString(), totalCost, LocalDate.now());
-            receiptRepo.logReceipt(receipt);
-            System.out.println("Sale completed: " + receipt);
-            return receipt;
-        } else {
+        if (!registerController.processPayment(totalCost, paymentMethod)) {
+            inventory.commitQuantityChanges(stockChanges(items, 1)); // Put the stock back
             System.out.println("Payment failed.");
+            return null;
         }
 
-        return null;
+        // The receipt row carries the coupon used, so one append records both
+        Receipt receipt = new Receipt(customer, cashier, lineItems, totalCost, LocalDate.now());
+        if (discount > 0) {
+            receipt.setCoupon(couponCode, discount);
+        }
+        if (!logReceipt(receipt)) {
+            registerController.issueRefund(totalCost); // Reverse the payment
+            inventory.commitQuantityChanges(stockChanges(items, 1)); // Put the stock back
+            System.out.println("Receipt could not be saved. Sale cancelled.");
+            return null;
+        }
+        System.out.println("Sale completed: " + receipt);
+        return receipt;
+    }
+
+    /**
+     * Converts a basket into per-item quantity changes for the inventory.
+     *
+     * @param items The items and their quantities.
+     * @param sign  -1 to take the quantities out of stock, 1 to put them back.
+     */
+    private Map<String, Integer> stockChanges(Map<Item, Integer> items, int sign) {
+        Map<String, Integer> changes = new LinkedHashMap<>();
+        for (Map.Entry<Item, Integer> entry : items.entrySet()) {
+            changes.merge(entry.getKey().getName(), sign * entry.getValue(), Integer::sum);
+        }
+        return changes;
     }
 
     /**
@@ -94,43 +120,68 @@ public class CashierController {
      */
     public Receipt handleReturn(Customer customer, Map<Item, Integer> items) {
         double totalRefund = 0.0;
-        StringBuilder returnDetails = new StringBuilder();
+        List<ReceiptLineItem> returnLineItems = new ArrayList<>();
 
-        // Process each item in the return
+        // Build the return line items
         for (Map.Entry<Item, Integer> entry : items.entrySet()) {
             Item item = entry.getKey();
             int quantity = entry.getValue();
 
-            if (item != null) {
-                // Update inventory to add returned quantity back
-                inventory.updateQuantity(item.getName(), quantity);
-
-                // Calculate refund for the current item
-                double itemRefund = item.getPrice() * quantity;
-                totalRefund += itemRefund;
-
-                // Build return details for the receipt
-                returnDetails.append(item.getName()).append(": ").append(quantity).append(" x $").append(item.getPrice()).append(" each, ");
-            } else {
+            if (item == null) {
                 System.out.println("Item not found in inventory. Please try again.");
                 return null;
             }
+
+            // Calculate refund for the current item
+            double itemRefund = item.getPrice() * quantity;
+            totalRefund += itemRefund;
+
+            // Build return line items for the receipt
+            returnLineItems.add(new ReceiptLineItem(item.getName(), quantity, item.getPrice()));
         }
 
-        // Remove trailing comma and space from return details
-        if (returnDetails.length() > 0) {
-            returnDetails.setLength(returnDetails.length() - 2);
+        // Add all returned quantities back in one transaction
+        if (!inventory.commitQuantityChanges(stockChanges(items, 1))) {
+            System.out.println("Return could not be recorded in inventory.");
+            return null;
+        }
+
+        // Record the return before refunding, so a return without a receipt is never paid out
+        Receipt receipt = new Receipt(customer, cashier, returnLineItems, -totalRefund, LocalDate.now());
+        if (!logReceipt(receipt)) {
+            inventory.commitQuantityChanges(stockChanges(items, -1)); // Take the stock back out
+            System.out.println("Receipt could not be saved. Return cancelled.");
+            return null;
         }
 
         // Issue total refund
         registerController.issueRefund(totalRefund);
-        Receipt receipt = new Receipt(customer, cashier, returnDetails.toString(), -totalRefund, LocalDate.now());
-        receiptRepo.logReceipt(receipt);
         System.out.println("Return processed: " + receipt);
         return receipt;
     }
 
-    public double applyCoupon(String couponCode, double totalCost, StringBuilder receiptDetails) {
+    /**
+     * Gives this register its own block of receipt IDs so it does not contend with
+     * other registers for every receipt.
+     *
+     * @param blockSize The number of receipt IDs to reserve at a time.
+     */
+    public void reserveReceiptIds(int blockSize) {
+        receiptIds = receiptRepo.reserveReceiptIds(blockSize);
+    }
+
+    private boolean logReceipt(Receipt receipt) {
+        return receiptIds != null ? receiptRepo.logReceipt(receipt, receiptIds) : receiptRepo.logReceipt(receipt);
+    }
+
+    /**
+     * Works out the discount a coupon gives on a total.
+     *
+     * @param couponCode The coupon code, may be null or empty.
+     * @param totalCost  The total before the coupon.
+     * @return The discount amount, 0 if the coupon is missing, invalid or expired.
+     */
+    public double applyCoupon(String couponCode, double totalCost) {
         double discount = 0.0;
     
         if (couponCode != null && !couponCode.isEmpty()) {
@@ -143,8 +194,6 @@ public class CashierController {
                     } else if (coupon.getDiscountType().equalsIgnoreCase("FIXED")) {
                         discount = coupon.getDiscountValue();
                     }
-                    receiptDetails.append("Coupon applied: ").append(couponCode)
-                        .append(" (-$").append(discount).append("), ");
                 } else {
                     System.out.println("The coupon has expired.");
                 }
@@ -256,35 +305,30 @@ public class CashierController {
             }
         }
 
-        // Step 3: Update inventory and prepare the receipt details
+        // Step 3: Prepare the receipt line items and take all the stock in one transaction
         double totalCost = 0.0;
-        StringBuilder receiptDetails = new StringBuilder();
+        List<ReceiptLineItem> lineItems = new ArrayList<>();
         for (Map.Entry<Item, Integer> entry : items.entrySet()) {
             Item item = entry.getKey();
             int quantity = entry.getValue();
 
-            // Update inventory
-            inventory.updateQuantity(item.getName(), -quantity);
-
-            // Build receipt details
+            // Build receipt line items
             double itemCost = item.getPrice() * quantity;
             totalCost += itemCost;
-            receiptDetails.append(item.getName())
-                    .append(": ")
-                    .append(quantity)
-                    .append(" x $")
-                    .append(item.getPrice())
-                    .append(", ");
+            lineItems.add(new ReceiptLineItem(item.getName(), quantity, item.getPrice()));
         }
-
-        // Remove trailing comma and space
-        if (receiptDetails.length() > 0) {
-            receiptDetails.setLength(receiptDetails.length() - 2);
+        if (!inventory.commitQuantityChanges(stockChanges(items, -1))) {
+            System.out.println("Some items are no longer available for pickup.");
+            return null;
         }
 
         // Step 4: Log the pickup as a transaction and generate a receipt
-        Receipt receipt = new Receipt(customer, cashier, receiptDetails.toString(), totalCost, LocalDate.now());
-        receiptRepo.logReceipt(receipt);
+        Receipt receipt = new Receipt(customer, cashier, lineItems, totalCost, LocalDate.now());
+        if (!logReceipt(receipt)) {
+            inventory.commitQuantityChanges(stockChanges(items, 1)); // Put the stock back
+            System.out.println("Receipt could not be saved. Pickup cancelled.");
+            return null;
+        }
 
         // Step 5: Confirm order pickup completion
         System.out.println("Order pickup completed successfully. Receipt: " + receipt);
@@ -0,0 +1,167 @@
+package com.sportinggoods.controller;
+
+import com.sportinggoods.model.*;
+import com.sportinggoods.repository.CouponRepository;
+import com.sportinggoods.repository.ReceiptRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs several registers (lanes) of one store in parallel against the shared inventory.
+ * Each lane has its own Register, CashierController and block of receipt IDs, and is
+ * served by a single thread, so nothing per-register is shared. Stock is guarded by the
+ * inventory's per-item locks: a sale gets all of its items or none, and an item is never
+ * sold below zero however many lanes sell it at once.
+ *
+ * Throughput is tracked as completed sales per second, from the start of the first sale
+ * to the end of the latest one, so time the lanes sit idle before or after a run does
+ * not count. It is compared against a target; bench/CheckoutBenchmark measures it.
+ *
+ * Settings (system properties):
+ * - checkout.targetSalesPerSecond: throughput the engine is expected to sustain with
+ *   32 lanes (default 2000)
+ * - checkout.receiptIdBlock: receipt IDs each lane reserves at a time (default 100)
+ */
+public class CheckoutEngine {
+    private static final int TARGET_SALES_PER_SECOND = Integer.getInteger("checkout.targetSalesPerSecond", 2000);
+    private static final int RECEIPT_ID_BLOCK = Integer.getInteger("checkout.receiptIdBlock", 100);
+
+    private final List<CashierController> lanes = new ArrayList<>();
+    private final List<ExecutorService> laneThreads = new ArrayList<>();
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final LongAdder completedSales = new LongAdder();
+    private final LongAdder failedSales = new LongAdder();
+    // Start of the first sale and end of the latest one; 0 until a sale has run
+    private final AtomicLong firstSaleNanos = new AtomicLong();
+    private final AtomicLong lastSaleNanos = new AtomicLong();
+
+    /**
+     * @param cashier     The cashier recorded on receipts, may be null.
+     * @param inventory   The store inventory shared by every lane.
+     * @param receiptRepo The receipt repository shared by every lane.
+     * @param couponRepo  The coupon repository shared by every lane.
+     * @param laneCount   The number of registers to run in parallel.
+     */
+    public CheckoutEngine(Cashier cashier, Inventory inventory, ReceiptRepository receiptRepo,
+                          CouponRepository couponRepo, int laneCount) {
+        for (int i = 0; i < Math.max(1, laneCount); i++) {
+            CashierController lane = new CashierController(cashier, inventory,
+                    new RegisterController(new Register()), receiptRepo, couponRepo);
+            lane.reserveReceiptIds(RECEIPT_ID_BLOCK);
+            lanes.add(lane);
+
+            int laneNumber = i + 1;
+            laneThreads.add(Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "checkout-lane-" + laneNumber);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Queues a sale on the next lane, round robin.
+     *
+     * @return A future holding the receipt, or null if the sale failed.
+     */
+    public Future<Receipt> submitSale(Customer customer, Map<Item, Integer> items, String paymentMethod, String couponCode) {
+        int lane = Math.floorMod(nextLane.getAndIncrement(), lanes.size());
+        return submitSale(lane, customer, items, paymentMethod, couponCode);
+    }
+
+    /**
+     * Queues a sale on a specific lane.
+     *
+     * @param lane The lane index, from 0 to getLaneCount() - 1.
+     * @return A future holding the receipt, or null if the sale failed.
+     */
+    public Future<Receipt> submitSale(int lane, Customer customer, Map<Item, Integer> items, String paymentMethod, String couponCode) {
+        CashierController controller = lanes.get(lane);
+        return laneThreads.get(lane).submit(() -> {
+            firstSaleNanos.compareAndSet(0, System.nanoTime());
+            Receipt receipt = controller.processSale(customer, items, paymentMethod, couponCode);
+            if (receipt != null) {
+                completedSales.increment();
+                lastSaleNanos.accumulateAndGet(System.nanoTime(), Math::max);
+            } else {
+                failedSales.increment();
+            }
+            return receipt;
+        });
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    public long getCompletedSales() {
+        return completedSales.sum();
+    }
+
+    public long getFailedSales() {
+        return failedSales.sum();
+    }
+
+    /**
+     * @return Completed sales per second, from the start of the first sale to the end of the
+     *         latest completed one, or 0 before any sale has completed.
+     */
+    public double getSalesPerSecond() {
+        long first = firstSaleNanos.get();
+        long last = lastSaleNanos.get();
+        if (first == 0 || last <= first) {
+            return 0.0;
+        }
+        return completedSales.sum() / ((last - first) / 1_000_000_000.0);
+    }
+
+    /**
+     * Starts a new measurement: clears the sale counts and the measured time. Sales still
+     * running may be counted in either measurement.
+     */
+    public void resetThroughput() {
+        completedSales.reset();
+        failedSales.reset();
+        firstSaleNanos.set(0);
+        lastSaleNanos.set(0);
+    }
+
+    /**
+     * @return True if the measured throughput reaches checkout.targetSalesPerSecond.
+     */
+    public boolean meetsThroughputTarget() {
+        return getSalesPerSecond() >= TARGET_SALES_PER_SECOND;
+    }
+
+    /**
+     * Finishes the queued sales and stops the lanes.
+     *
+     * @param timeoutSeconds The longest time to wait for each lane.
+     */
+    public void shutdown(long timeoutSeconds) {
+        for (ExecutorService laneThread : laneThreads) {
+            laneThread.shutdown();
+        }
+        try {
+            for (ExecutorService laneThread : laneThreads) {
+                laneThread.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lanes: %d, Completed: %d, Failed: %d, Sales/sec: %.1f (target %d)",
+                lanes.size(), getCompletedSales(), getFailedSales(), getSalesPerSecond(), TARGET_SALES_PER_SECOND);
+    }
+}
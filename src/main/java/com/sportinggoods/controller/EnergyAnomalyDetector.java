@@ -0,0 +1,170 @@
+package com.sportinggoods.controller;
+
+import com.sportinggoods.repository.EnergyTimeSeries;
+import com.sportinggoods.repository.UtilityRepository;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Checks each energy reading against a running baseline for its utility, as it arrives.
+ * The baseline is an exponentially weighted mean and variance, so each utility needs a
+ * few numbers of state and each reading is a handful of arithmetic operations.
+ *
+ * A reading is a spike when it is more than the threshold number of standard deviations
+ * above the mean, and an outage when it falls to almost nothing against a meaningful
+ * mean. An anomaly is reported once when it starts; readings keep updating the baseline,
+ * so a lasting change of level stops being reported once it becomes the new normal.
+ * Baselines live in memory; {@link #seed} starts one from the utility's recorded history
+ * rather than from nothing.
+ *
+ * Settings (system properties):
+ * - energy.ewmaAlpha: weight of each new reading in the baseline (default 0.05)
+ * - energy.zThreshold: standard deviations above the mean that count as a spike (default 4)
+ * - energy.warmupReadings: readings a utility needs before it is checked (default 20)
+ */
+public class EnergyAnomalyDetector {
+    private static final double ALPHA = Double.parseDouble(System.getProperty("energy.ewmaAlpha", "0.05"));
+    private static final double Z_THRESHOLD = Double.parseDouble(System.getProperty("energy.zThreshold", "4"));
+    private static final int WARMUP_READINGS = Integer.getInteger("energy.warmupReadings", 20);
+    // A reading at or below this share of the mean reads as the utility having gone down
+    private static final double OUTAGE_FRACTION = 0.05;
+    // Keeps a perfectly steady utility from flagging tiny changes as huge deviations
+    private static final double MIN_STD_FRACTION = 0.01;
+
+    public enum AnomalyType { SPIKE, OUTAGE }
+
+    /**
+     * A reading that did not fit its utility's baseline.
+     */
+    public static class Anomaly {
+        private final AnomalyType type;
+        private final String utilityId;
+        private final int storeId;
+        private final double reading;
+        private final double expected;
+        private final double zScore;
+        private final LocalDateTime detectedAt;
+
+        private Anomaly(AnomalyType type, String utilityId, int storeId, double reading, double expected, double zScore) {
+            this.type = type;
+            this.utilityId = utilityId;
+            this.storeId = storeId;
+            this.reading = reading;
+            this.expected = expected;
+            this.zScore = zScore;
+            this.detectedAt = LocalDateTime.now();
+        }
+
+        public AnomalyType getType() { return type; }
+        public String getUtilityId() { return utilityId; }
+        public int getStoreId() { return storeId; }
+        public double getReading() { return reading; }
+        public double getExpected() { return expected; }
+        public double getZScore() { return zScore; }
+        public LocalDateTime getDetectedAt() { return detectedAt; }
+
+        @Override
+        public String toString() {
+            return String.format("%s on utility %s (store %d): %.1f kWh against %.1f kWh expected (z = %.1f) at %s",
+                    type == AnomalyType.SPIKE ? "Energy spike" : "Outage", utilityId, storeId, reading, expected, zScore, detectedAt);
+        }
+    }
+
+    // The running baseline of one utility
+    private static final class Baseline {
+        private double mean;
+        private double variance;
+        private long readings;
+        private boolean anomalous; // The last reading was an anomaly, so the next is not reported again
+    }
+
+    private final ConcurrentHashMap<String, Baseline> baselines = new ConcurrentHashMap<>();
+    private final Consumer<Anomaly> anomalyHandler;
+
+    /**
+     * @param anomalyHandler Called with each anomaly, on the thread that supplied the reading.
+     */
+    public EnergyAnomalyDetector(Consumer<Anomaly> anomalyHandler) {
+        this.anomalyHandler = anomalyHandler;
+    }
+
+    /**
+     * Checks a reading against the utility's baseline, then adds it to the baseline.
+     *
+     * @return The anomaly the reading started, or null if it is normal or continues one
+     *         already reported.
+     */
+    public Anomaly check(String utilityId, int storeId, double reading) {
+        Baseline baseline = baselines.computeIfAbsent(UtilityRepository.key(utilityId, storeId), key -> new Baseline());
+        Anomaly anomaly = null;
+        synchronized (baseline) {
+            if (baseline.readings == 0) {
+                baseline.mean = reading;
+            } else {
+                double std = Math.max(Math.sqrt(baseline.variance), MIN_STD_FRACTION * Math.abs(baseline.mean));
+                double zScore = std == 0 ? 0 : (reading - baseline.mean) / std;
+                AnomalyType type = null;
+                if (baseline.readings >= WARMUP_READINGS) {
+                    if (baseline.mean > 0 && reading <= OUTAGE_FRACTION * baseline.mean) {
+                        type = AnomalyType.OUTAGE;
+                    } else if (zScore >= Z_THRESHOLD) {
+                        type = AnomalyType.SPIKE;
+                    }
+                }
+                if (type != null && !baseline.anomalous) {
+                    anomaly = new Anomaly(type, utilityId, storeId, reading, baseline.mean, zScore);
+                }
+                baseline.anomalous = type != null;
+
+                // Plain averaging until the baseline has enough readings, so early ones are not underweighted
+                double alpha = Math.max(ALPHA, 1.0 / (baseline.readings + 1));
+                double difference = reading - baseline.mean;
+                double increment = alpha * difference;
+                baseline.mean += increment;
+                baseline.variance = (1 - alpha) * (baseline.variance + difference * increment);
+            }
+            baseline.readings++;
+        }
+        if (anomaly != null && anomalyHandler != null) {
+            anomalyHandler.accept(anomaly);
+        }
+        return anomaly;
+    }
+
+    /**
+     * Starts the utility's baseline from its recorded readings, unless it already has one.
+     * History of at least the warm-up length is checked against from the next reading.
+     */
+    public void seed(String utilityId, int storeId, EnergyTimeSeries.Stats history) {
+        if (history == null || history.getReadings() == 0) {
+            return;
+        }
+        Baseline baseline = new Baseline();
+        baseline.mean = history.getMean();
+        baseline.variance = history.getStdDev() * history.getStdDev();
+        baseline.readings = history.getReadings();
+        baselines.putIfAbsent(UtilityRepository.key(utilityId, storeId), baseline);
+    }
+
+    /**
+     * @return True if the utility's latest reading was anomalous.
+     */
+    public boolean isAnomalous(String utilityId, int storeId) {
+        Baseline baseline = baselines.get(UtilityRepository.key(utilityId, storeId));
+        if (baseline == null) {
+            return false;
+        }
+        synchronized (baseline) {
+            return baseline.anomalous;
+        }
+    }
+
+    /**
+     * Forgets a utility's baseline, e.g. after it was repaired or replaced.
+     */
+    public void reset(String utilityId, int storeId) {
+        baselines.remove(UtilityRepository.key(utilityId, storeId));
+    }
+}
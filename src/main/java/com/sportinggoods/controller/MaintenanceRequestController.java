@@ -4,14 +4,21 @@ import com.sportinggoods.model.MaintenanceRequest;
 import com.sportinggoods.repository.MaintenanceRequestRepository;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MaintenanceRequestController {
     private final MaintenanceRequestRepository repository;
+    // Requests escalated since a manager last looked, across all stores
+    private final Queue<MaintenanceRequest> escalations = new ConcurrentLinkedQueue<>();
 
     public MaintenanceRequestController(MaintenanceRequestRepository repository) {
         this.repository = repository;
+        repository.setEscalationHandler(this::escalateOverdueRequest);
     }
 
     public boolean createRequest(int storeId, String location, String issueType, String urgency) {
@@ -35,24 +42,63 @@ public class MaintenanceRequestController {
         };
     }
 
-    public boolean updateRequestStatus(String requestId, String newStatus) {
-        List<MaintenanceRequest> requests = repository.getAllRequests();
-
-        for (MaintenanceRequest request : requests) {
-            if (request.getRequestId().equals(requestId)) {
-                if(newStatus.equals("Open")){
-                    request.updateTimeRemaining();
-                }
-                else{
-                    request.setTimeRemaining(0);
-                }
-                request.setStatus(newStatus);
-                request.setLastUpdated(LocalDateTime.now());
-                return repository.saveRequestsToFile(requests);
+    /**
+     * Called when a waiting request passes its deadline: raises its urgency one level and
+     * keeps it for the managers' overdue list. If it is still waiting when the new
+     * urgency's time runs out, it is escalated again; emergencies are re-raised hourly.
+     */
+    private void escalateOverdueRequest(MaintenanceRequest request) {
+        String urgency = switch (request.getUrgency().toLowerCase()) {
+            case "low priority" -> "Medium Priority";
+            case "medium priority" -> "High Priority";
+            case "high priority", "emergency" -> "Emergency";
+            default -> "High Priority";
+        };
+        if (repository.escalateRequest(request.getRequestId(), urgency, calculateTimeRemaining(urgency))) {
+            request.setUrgency(urgency);
+            escalations.add(request);
+        }
+    }
+
+    /**
+     * Returns the store's requests escalated since the last call, oldest first, and
+     * clears them from the list.
+     */
+    public List<MaintenanceRequest> takeEscalatedRequests(int storeId) {
+        List<MaintenanceRequest> escalated = new ArrayList<>();
+        for (Iterator<MaintenanceRequest> it = escalations.iterator(); it.hasNext(); ) {
+            MaintenanceRequest request = it.next();
+            if (request.getStoreId() == storeId) {
+                escalated.add(request);
+                it.remove();
             }
         }
+        return escalated;
+    }
+
+    public boolean updateRequestStatus(String requestId, String newStatus) {
+        if (repository.updateRequestStatus(requestId, newStatus)) {
+            return true;
+        }
 
         System.out.println("Request with ID " + requestId + " not found.");
         return false;
     }
+
+    /**
+     * Hands the store's most urgent open request to a technician. Each request is handed
+     * out once, however many technicians ask at the same time.
+     *
+     * @return The claimed request, or null if nothing is waiting.
+     */
+    public MaintenanceRequest claimNextRequest(int storeId) {
+        return repository.claimNextRequest(storeId);
+    }
+
+    /**
+     * Returns a claimed request to the store's queue.
+     */
+    public boolean releaseRequest(String requestId) {
+        return repository.releaseRequest(requestId);
+    }
 }
@@ -19,9 +19,7 @@ public class PricingController {
                 Item itemByName = inventory.getItem(value);
                 yield itemByName != null ? List.of(itemByName) : List.of();
             }
-            case "department" -> inventory.getItems().stream()
-                    .filter(item -> item.getDepartment().equalsIgnoreCase(value))
-                    .collect(Collectors.toList());
+            case "department" -> inventory.getItemsByDepartment(value);
             case "storeid" -> {
                 try {
                     int storeID = Integer.parseInt(value);
@@ -130,6 +130,150 @@ public class ShippingController {
         return false;
     }
 
+    // ==========================
+    // Batch Fulfilment
+    // ==========================
+
+    /**
+     * The order in which a shipping wave hands out stock.
+     */
+    public enum WavePriority {
+        /** Oldest orders first; an order ships only if it can ship complete. */
+        FIFO,
+        /** Most valuable orders first; an order ships only if it can ship complete. */
+        ORDER_VALUE,
+        /** Oldest orders first, shipping whatever is in stock and splitting off the rest. */
+        PARTIAL_ALLOWED
+    }
+
+    /**
+     * Counts of what a shipping wave did.
+     */
+    public static class WaveResult {
+        private int shipped;
+        private int partiallyShipped;
+        private int waiting;
+        private int unitsShipped;
+
+        public int getShipped() { return shipped; }
+        public int getPartiallyShipped() { return partiallyShipped; }
+        public int getWaiting() { return waiting; }
+        public int getUnitsShipped() { return unitsShipped; }
+
+        @Override
+        public String toString() {
+            return "Shipped: " + shipped + ", Partially Shipped: " + partiallyShipped
+                    + ", Still Waiting: " + waiting + ", Units Shipped: " + unitsShipped;
+        }
+    }
+
+    /**
+     * Runs a shipping wave with the priority from the shipping.wavePriority system
+     * property (default PARTIAL_ALLOWED, which ships like {@link #processShippingOrder}).
+     */
+    public WaveResult processShippingWave(int storeId, Inventory inventory) {
+        WavePriority priority;
+        try {
+            priority = WavePriority.valueOf(System.getProperty("shipping.wavePriority", "PARTIAL_ALLOWED").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown shipping wave priority, using PARTIAL_ALLOWED.");
+            priority = WavePriority.PARTIAL_ALLOWED;
+        }
+        return processShippingWave(storeId, inventory, priority);
+    }
+
+    /**
+     * Ships every confirmed order of a store in one pass, e.g. for the end-of-day run.
+     * Stock is allocated to the orders in priority order against a snapshot of the
+     * inventory. All stock decrements are then committed as one inventory transaction,
+     * and all order updates, split-off orders and status changes are saved as one batch.
+     * If the stock changed in the meantime so the decrements no longer fit, nothing is
+     * changed and null is returned.
+     *
+     * @param storeId   The store whose orders to ship.
+     * @param inventory The store's inventory.
+     * @param priority  The order in which orders get stock.
+     * @return What the wave did, or null if nothing could be committed.
+     */
+    public WaveResult processShippingWave(int storeId, Inventory inventory, WavePriority priority) {
+        List<ShippingOrder> pending = orderRepo.getOrdersByStatus(storeId, "Confirmed");
+        if (priority == WavePriority.ORDER_VALUE) {
+            pending.sort(Comparator.comparingDouble(ShippingOrder::getTotalPrice).reversed());
+        } else {
+            // Stable sort, so orders from the same day stay in the order they were placed
+            pending.sort(Comparator.comparing(ShippingOrder::getOrderDate, Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+
+        WaveResult result = new WaveResult();
+        Map<String, Integer> available = new HashMap<>();
+        Map<String, Integer> stockChanges = new LinkedHashMap<>();
+        List<ShippingOrder> changedOrders = new ArrayList<>();
+        LocalDate date = LocalDate.now();
+
+        for (ShippingOrder order : pending) {
+            Map<Item, Integer> shippedItems = new LinkedHashMap<>();
+            Map<Item, Integer> unshippedItems = new LinkedHashMap<>();
+            Map<String, Integer> taken = new HashMap<>();
+            for (Map.Entry<Item, Integer> entry : order.getItems().entrySet()) {
+                String name = entry.getKey().getName();
+                int left = available.computeIfAbsent(name, n -> {
+                    Item item = inventory.getItem(n);
+                    return item == null ? 0 : item.getQuantity();
+                }) - taken.getOrDefault(name, 0);
+                int quantity = Math.min(entry.getValue(), Math.max(left, 0));
+                if (quantity > 0) {
+                    shippedItems.put(entry.getKey(), quantity);
+                    taken.merge(name, quantity, Integer::sum);
+                }
+                if (quantity < entry.getValue()) {
+                    unshippedItems.put(entry.getKey(), entry.getValue() - quantity);
+                }
+            }
+
+            boolean partial = !unshippedItems.isEmpty();
+            if (shippedItems.isEmpty() || (partial && priority != WavePriority.PARTIAL_ALLOWED)) {
+                result.waiting++; // Keeps its stock for the orders after it
+                continue;
+            }
+
+            for (Map.Entry<String, Integer> take : taken.entrySet()) {
+                available.merge(take.getKey(), -take.getValue(), Integer::sum);
+                stockChanges.merge(take.getKey(), -take.getValue(), Integer::sum);
+                result.unitsShipped += take.getValue();
+            }
+            changedOrders.add(copyOrder(order, order.getOrderId(), shippedItems, order.getOrderDate(),
+                    partial ? "Partially Shipped" : "Shipped"));
+            if (partial) {
+                changedOrders.add(copyOrder(order, UUID.randomUUID().toString(), unshippedItems, date, "Confirmed"));
+                result.partiallyShipped++;
+            } else {
+                result.shipped++;
+            }
+        }
+
+        if (changedOrders.isEmpty()) {
+            return result;
+        }
+        if (!inventory.commitQuantityChanges(stockChanges)) {
+            System.out.println("Stock changed during the shipping wave; no orders were shipped.");
+            return null;
+        }
+        orderRepo.saveOrderBatch(changedOrders);
+        return result;
+    }
+
+    // Copies an order's customer details onto a new order for the given items
+    private static ShippingOrder copyOrder(ShippingOrder order, String orderId, Map<Item, Integer> items,
+                                           LocalDate date, String status) {
+        double price = 0.0;
+        for (Map.Entry<Item, Integer> entry : items.entrySet()) {
+            price += Math.round(entry.getKey().getPrice() * entry.getValue() * 100.0) / 100.0;
+        }
+        return new ShippingOrder(orderId, order.getStoreId(), order.getCustomerFirstName(), order.getCustomerLastName(),
+                items, price, order.getShippingAddress(), order.getCustomerEmail(), order.getCustomerPhoneNumber(),
+                date, status);
+    }
+
 
 
 
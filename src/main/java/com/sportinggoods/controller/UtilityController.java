@@ -1,36 +1,173 @@
 package com.sportinggoods.controller;
 
 import com.sportinggoods.model.Utility;
+import com.sportinggoods.model.UtilitySchedule;
+import com.sportinggoods.repository.EnergyTimeSeries;
 import com.sportinggoods.repository.UtilityRepository;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class UtilityController {
+    // How far back a utility's readings go into its starting baseline
+    private static final Duration BASELINE_HISTORY = Duration.ofDays(90);
+
     private final UtilityRepository utilityRepository;
+    private final UtilityScheduler utilityScheduler; // Null if schedules are not run
+    private final MaintenanceRequestController maintenanceRequestController; // Null if anomalies raise no requests
+    private final EnergyAnomalyDetector anomalyDetector = new EnergyAnomalyDetector(this::handleAnomaly);
+    // Anomalies detected since a manager last looked, across all stores
+    private final Queue<EnergyAnomalyDetector.Anomaly> anomalies = new ConcurrentLinkedQueue<>();
+    // Parsed schedules by text, empty if unparseable
+    private final ConcurrentHashMap<String, Optional<UtilitySchedule>> parsedSchedules = new ConcurrentHashMap<>();
 
     public UtilityController(UtilityRepository repo) {
+        this(repo, null, null);
+    }
+
+    public UtilityController(UtilityRepository repo, UtilityScheduler scheduler) {
+        this(repo, scheduler, null);
+    }
+
+    public UtilityController(UtilityRepository repo, UtilityScheduler scheduler, MaintenanceRequestController maintenanceRequestController) {
         this.utilityRepository = repo;
+        this.utilityScheduler = scheduler;
+        this.maintenanceRequestController = maintenanceRequestController;
+        for (Utility utility : repo.getAllUtilities()) {
+            if (utility != null) {
+                anomalyDetector.seed(utility.getUtilityId(), utility.getStoreId(),
+                        repo.getEnergyStats(utility.getUtilityId(), utility.getStoreId(), BASELINE_HISTORY));
+            }
+        }
     }
 
     public boolean addUtility(String utilityId, int storeId, String name, String status, double energyConsumption, LocalDateTime lastUpdated, String schedule) {
-        return utilityRepository.addUtility(new Utility(utilityId, storeId, name, status, energyConsumption, lastUpdated, schedule));
+        Utility utility = new Utility(utilityId, storeId, name, status, energyConsumption, lastUpdated, schedule);
+        boolean added = utilityRepository.addUtility(utility);
+        if (added && utilityScheduler != null) {
+            utilityScheduler.reschedule(utility);
+        }
+        return added;
     }
 
     public boolean updateUtilityStatus(String utilityId, int storeId, String status) {
         return utilityRepository.updateUtilityField(utilityId, storeId, utility -> utility.setStatus(status));
     }
 
+    /**
+     * Saves a new energy reading, then checks it against the utility's baseline; a spike
+     * or outage raises a maintenance request straight away. Readings taken while the
+     * utility is not Active, or outside its scheduled hours, are saved but not checked.
+     */
     public boolean updateEnergyConsumption(String utilityId, int storeId, double energyConsumption) {
-        return utilityRepository.updateUtilityField(utilityId, storeId, utility -> utility.setEnergyConsumption(energyConsumption));
+        Utility utility = utilityRepository.recordEnergyReading(utilityId, storeId, energyConsumption);
+        if (utility == null) {
+            return false;
+        }
+        if (isScheduledOn(utility, LocalDateTime.now())) {
+            anomalyDetector.check(utilityId, storeId, energyConsumption);
+        }
+        return true;
+    }
+
+    // Switched off, the utility reads close to nothing, which must not count as an outage
+    private boolean isScheduledOn(Utility utility, LocalDateTime now) {
+        if (!"Active".equalsIgnoreCase(utility.getStatus())) {
+            return false;
+        }
+        String text = utility.getSchedule() == null ? "" : utility.getSchedule().trim();
+        Optional<UtilitySchedule> schedule = parsedSchedules.computeIfAbsent(text, t -> Optional.ofNullable(UtilitySchedule.parse(t)));
+        return schedule.map(parsed -> parsed.isOn(now)).orElse(true);
+    }
+
+    // An outage takes the utility down; either kind of anomaly gets a maintenance request.
+    // Runs on the thread that supplied the reading, so the status goes out with the readings batch.
+    private void handleAnomaly(EnergyAnomalyDetector.Anomaly anomaly) {
+        anomalies.add(anomaly);
+        Utility utility = utilityRepository.getUtilityByIdAndStoreId(anomaly.getUtilityId(), anomaly.getStoreId());
+        String location = utility == null ? anomaly.getUtilityId() : utility.getName();
+        if (anomaly.getType() == EnergyAnomalyDetector.AnomalyType.OUTAGE) {
+            utilityRepository.queueStatusChange(anomaly.getUtilityId(), anomaly.getStoreId(), "Outage");
+            if (maintenanceRequestController != null) {
+                maintenanceRequestController.createRequest(anomaly.getStoreId(), location, "Utility Outage", "Emergency");
+            }
+        } else if (maintenanceRequestController != null) {
+            maintenanceRequestController.createRequest(anomaly.getStoreId(), location, "Energy Spike", "High Priority");
+        }
+    }
+
+    /**
+     * Returns the store's energy anomalies detected since the last call, oldest first,
+     * and clears them from the list.
+     */
+    public List<EnergyAnomalyDetector.Anomaly> takeEnergyAnomalies(int storeId) {
+        List<EnergyAnomalyDetector.Anomaly> taken = new ArrayList<>();
+        for (Iterator<EnergyAnomalyDetector.Anomaly> it = anomalies.iterator(); it.hasNext(); ) {
+            EnergyAnomalyDetector.Anomaly anomaly = it.next();
+            if (anomaly.getStoreId() == storeId) {
+                taken.add(anomaly);
+                it.remove();
+            }
+        }
+        return taken;
+    }
+
+    public EnergyTimeSeries.Stats getEnergyStats(String utilityId, int storeId, Duration window) {
+        return utilityRepository.getEnergyStats(utilityId, storeId, window);
+    }
+
+    public EnergyTimeSeries.Stats getStoreEnergyStats(int storeId, Duration window) {
+        return utilityRepository.getStoreEnergyStats(storeId, window);
+    }
+
+    public List<EnergyTimeSeries.StoreUsage> getTopConsumingStores(int limit, Duration window) {
+        return utilityRepository.getTopConsumingStores(limit, window);
     }
 
     public boolean updateSchedule(String utilityId, int storeId, String schedule) {
-        return utilityRepository.updateUtilityField(utilityId, storeId, utility -> utility.setSchedule(schedule));
+        boolean updated = utilityRepository.updateUtilityField(utilityId, storeId, utility -> utility.setSchedule(schedule));
+        if (updated && utilityScheduler != null) {
+            Utility utility = utilityRepository.getUtilityByIdAndStoreId(utilityId, storeId);
+            if (utility != null) {
+                utilityScheduler.reschedule(utility);
+            }
+        }
+        return updated;
     }
 
-    public void applySeasonalPreset(String season) {
-        utilityRepository.applySeasonalPreset(season);
+    /**
+     * @return When the utility's schedule next switches it on or off, or null if it will not.
+     */
+    public LocalDateTime getNextScheduledSwitch(String utilityId, int storeId) {
+        return utilityScheduler == null ? null : utilityScheduler.getNextSwitchTime(utilityId, storeId);
+    }
+
+    public UtilityRepository.BulkUpdateResult applySeasonalPreset(String season) {
+        UtilityRepository.BulkUpdateResult result = utilityRepository.applySeasonalPreset(season);
+        if (utilityScheduler != null) {
+            utilityScheduler.reload(); // The preset turns everything on; put scheduled utilities back on schedule
+        }
+        return result;
+    }
+
+    /**
+     * Applies a change to every utility matching a filter, saving once.
+     */
+    public UtilityRepository.BulkUpdateResult updateUtilitiesWhere(Predicate<Utility> filter, Consumer<Utility> change) {
+        UtilityRepository.BulkUpdateResult result = utilityRepository.updateUtilitiesWhere(filter, change);
+        if (result.getChanged() > 0 && utilityScheduler != null) {
+            utilityScheduler.reload(); // Schedules may have changed
+        }
+        return result;
     }
 
     public Utility getUtilityById(String utilityId) {
@@ -49,14 +186,29 @@ public class UtilityController {
         return utilityRepository.getUtilityByIdAndStoreId(utilityId, storeId);
     }
 
+    /**
+     * @return The utilities that are down or whose latest reading was a spike.
+     */
     public List<Utility> runStatusCheck() {
         return utilityRepository.getAllUtilities().stream()
-                .filter(utility -> "Outage".equalsIgnoreCase(utility.getStatus()) || utility.getEnergyConsumption() > 1000)
+                .filter(utility -> utility != null && ("Outage".equalsIgnoreCase(utility.getStatus())
+                        || anomalyDetector.isAnomalous(utility.getUtilityId(), utility.getStoreId())))
                 .toList();
     }
 
+    /**
+     * @return True if the utility's latest energy reading did not fit its baseline.
+     */
+    public boolean isEnergyAnomalous(String utilityId, int storeId) {
+        return anomalyDetector.isAnomalous(utilityId, storeId);
+    }
+
     public boolean deleteUtility(String utilityId) {
-        return utilityRepository.deleteUtility(utilityId);
+        boolean deleted = utilityRepository.deleteUtility(utilityId);
+        if (deleted && utilityScheduler != null) {
+            utilityScheduler.reload();
+        }
+        return deleted;
     }
 
     public boolean scheduleMaintenance(String utilityId, int storeId, String date) {
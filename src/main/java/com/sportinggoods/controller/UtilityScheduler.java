@@ -0,0 +1,264 @@
+package com.sportinggoods.controller;
+
+import com.sportinggoods.model.Utility;
+import com.sportinggoods.model.UtilitySchedule;
+import com.sportinggoods.repository.UtilityRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Switches utilities on and off by their schedules. Each scheduled utility has its next
+ * switch time in a min-heap, and the scheduler thread sleeps until the earliest one, so
+ * there is no polling however many utilities there are. Everything due at the same time
+ * (e.g. every store opening at 09:00) is written to the utilities file as one batch.
+ *
+ * Only utilities that are Active or Inactive are switched; one in Outage or with
+ * maintenance scheduled is left alone until its status is set back.
+ *
+ * If a batch cannot be written, its utilities are queued again a little later, so a
+ * failed write delays switches rather than losing them.
+ */
+public class UtilityScheduler {
+    private static final String ON = "Active";
+    private static final String OFF = "Inactive";
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final UtilityRepository utilityRepository;
+    private final PriorityQueue<Entry> fireQueue = new PriorityQueue<>(Comparator
+            .comparing((Entry entry) -> entry.fireAt)
+            .thenComparingLong(entry -> entry.sequence));
+    // The live heap entry of each scheduled utility; heap entries not in here are stale and skipped
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Parsed schedules by text, since most utilities share a handful of schedules; null if unparseable
+    private final Map<String, UtilitySchedule> parsedSchedules = new HashMap<>();
+    private final AtomicLong switchCount = new AtomicLong();
+    private long nextSequence;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> wakeUp;
+    private LocalDateTime wakeUpAt;
+
+    private static class Entry {
+        private final String utilityId;
+        private final int storeId;
+        private final UtilitySchedule schedule;
+        private final LocalDateTime fireAt;
+        private final long sequence; // Equal times fire in the order they were queued
+
+        private Entry(String utilityId, int storeId, UtilitySchedule schedule, LocalDateTime fireAt, long sequence) {
+            this.utilityId = utilityId;
+            this.storeId = storeId;
+            this.schedule = schedule;
+            this.fireAt = fireAt;
+            this.sequence = sequence;
+        }
+    }
+
+    public UtilityScheduler(UtilityRepository utilityRepository) {
+        this.utilityRepository = utilityRepository;
+    }
+
+    /**
+     * Loads every utility's schedule and starts switching. Utilities are first brought in
+     * line with their schedules, in one batch.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "utility-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+    }
+
+    /**
+     * Stops switching. Utilities keep their current status.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            wakeUp = null;
+            wakeUpAt = null;
+        }
+    }
+
+    /**
+     * Re-reads every utility's schedule, e.g. after a bulk change to the utilities file.
+     */
+    public synchronized void reload() {
+        entries.clear();
+        fireQueue.clear();
+        LocalDateTime now = LocalDateTime.now();
+        for (Utility utility : utilityRepository.getAllUtilities()) {
+            if (utility != null) {
+                queue(utility.getUtilityId(), utility.getStoreId(), utility.getSchedule(), now);
+            }
+        }
+        scheduleWakeUp();
+    }
+
+    /**
+     * Picks up a utility's new or changed schedule and applies it straight away.
+     *
+     * @return False if the schedule is not in a format the scheduler can run.
+     */
+    public synchronized boolean reschedule(Utility utility) {
+        boolean scheduled = queue(utility.getUtilityId(), utility.getStoreId(), utility.getSchedule(), LocalDateTime.now());
+        scheduleWakeUp();
+        return scheduled;
+    }
+
+    /**
+     * @return When the scheduler will next switch the utility, or null if it will not.
+     */
+    public synchronized LocalDateTime getNextSwitchTime(String utilityId, int storeId) {
+        Entry entry = entries.get(UtilityRepository.key(utilityId, storeId));
+        return entry == null ? null : entry.fireAt;
+    }
+
+    public synchronized int getScheduledCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of status changes the scheduler has written.
+     */
+    public long getSwitchCount() {
+        return switchCount.get();
+    }
+
+    private boolean queue(String utilityId, int storeId, String scheduleText, LocalDateTime fireAt) {
+        String key = UtilityRepository.key(utilityId, storeId);
+        UtilitySchedule schedule = parse(scheduleText);
+        if (schedule == null) {
+            entries.remove(key);
+            return false;
+        }
+        Entry entry = new Entry(utilityId, storeId, schedule, fireAt, nextSequence++);
+        entries.put(key, entry);
+        fireQueue.add(entry);
+        return true;
+    }
+
+    private UtilitySchedule parse(String scheduleText) {
+        String text = scheduleText == null ? "" : scheduleText.trim();
+        if (!parsedSchedules.containsKey(text)) {
+            parsedSchedules.put(text, UtilitySchedule.parse(text));
+        }
+        return parsedSchedules.get(text);
+    }
+
+    // Arms the executor for the earliest entry, unless it is already armed for that time or earlier
+    private void scheduleWakeUp() {
+        if (executor == null) {
+            return;
+        }
+        Entry head;
+        while ((head = fireQueue.peek()) != null && entries.get(key(head)) != head) {
+            fireQueue.poll(); // Stale
+        }
+        if (head == null || (wakeUp != null && !wakeUpAt.isAfter(head.fireAt))) {
+            return;
+        }
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        long delay = Math.max(0, Duration.between(LocalDateTime.now(), head.fireAt).toMillis());
+        wakeUpAt = head.fireAt;
+        wakeUp = executor.schedule(this::switchDueUtilities, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void switchDueUtilities() {
+        Map<String, Consumer<Utility>> updates = new HashMap<>();
+        Map<String, Entry> dueEntries = new HashMap<>();
+        Map<String, Entry> nextEntries = new HashMap<>(); // Null where the schedule never switches again
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpAt = null;
+            LocalDateTime now = LocalDateTime.now();
+            Entry entry;
+            while ((entry = fireQueue.peek()) != null && !entry.fireAt.isAfter(now)) {
+                fireQueue.poll();
+                String key = key(entry);
+                if (entries.get(key) != entry) {
+                    continue; // Stale
+                }
+                String status = entry.schedule.isOn(now) ? ON : OFF;
+                updates.put(key, utility -> switchTo(utility, status, now));
+                dueEntries.put(key, entry);
+
+                LocalDateTime next = entry.schedule.nextTransition(now);
+                Entry nextEntry = null;
+                if (next == null) {
+                    entries.remove(key); // Always on or always off; nothing more to do
+                } else {
+                    nextEntry = new Entry(entry.utilityId, entry.storeId, entry.schedule, next, nextSequence++);
+                    entries.put(key, nextEntry);
+                    fireQueue.add(nextEntry);
+                }
+                nextEntries.put(key, nextEntry);
+            }
+            scheduleWakeUp();
+        }
+        // Written outside the lock so schedule changes are not held up by the file write;
+        // the single scheduler thread keeps batches in order
+        if (updates.isEmpty()) {
+            return;
+        }
+        int switched = utilityRepository.updateUtilityFields(updates);
+        if (switched >= 0) {
+            switchCount.addAndGet(switched);
+            return;
+        }
+        System.err.println("Error saving scheduled switches for " + updates.size()
+                + " utilities; retrying in " + RETRY_DELAY.getSeconds() + " seconds.");
+        retry(dueEntries, nextEntries);
+    }
+
+    // Queues the utilities of a batch that was not written to be switched again after the
+    // retry delay, unless their schedules were changed in the meantime
+    private synchronized void retry(Map<String, Entry> dueEntries, Map<String, Entry> nextEntries) {
+        LocalDateTime retryAt = LocalDateTime.now().plus(RETRY_DELAY);
+        for (Map.Entry<String, Entry> due : dueEntries.entrySet()) {
+            String key = due.getKey();
+            if (entries.get(key) != nextEntries.get(key)) {
+                continue; // Rescheduled or removed since; that takes over
+            }
+            Entry entry = due.getValue();
+            Entry nextEntry = nextEntries.get(key);
+            // The retry works out the status again when it fires, so it never undoes a later switch
+            LocalDateTime fireAt = nextEntry == null || retryAt.isBefore(nextEntry.fireAt) ? retryAt : nextEntry.fireAt;
+            Entry retryEntry = new Entry(entry.utilityId, entry.storeId, entry.schedule, fireAt, nextSequence++);
+            entries.put(key, retryEntry);
+            fireQueue.add(retryEntry);
+        }
+        scheduleWakeUp();
+    }
+
+    private static void switchTo(Utility utility, String status, LocalDateTime now) {
+        String current = utility.getStatus();
+        if ((ON.equalsIgnoreCase(current) || OFF.equalsIgnoreCase(current)) && !status.equals(current)) {
+            utility.setStatus(status);
+            utility.setLastUpdated(now);
+        }
+    }
+
+    private static String key(Entry entry) {
+        return UtilityRepository.key(entry.utilityId, entry.storeId);
+    }
+}
@@ -1,8 +1,11 @@
 package com.sportinggoods.menu;
 
 import com.sportinggoods.commands.MenuInvoker;
+import com.sportinggoods.model.Customer;
+import com.sportinggoods.repository.CustomerRepository;
 import com.sportinggoods.util.InitializationManager;
 
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -42,6 +45,52 @@ public abstract class BaseMenu {
         }
     }
 
+    /**
+     * Asks for the customer at the counter, by customer ID or by name. A name shared by
+     * several customers lists them to pick from; an empty answer is a guest.
+     *
+     * @param customerRepository The repository to look the customer up in.
+     * @return The customer, a returning customer for an unknown ID, or a guest.
+     */
+    protected Customer promptForCustomer(CustomerRepository customerRepository) {
+        System.out.print("Enter Customer ID or name (or press Enter for Guest): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return new Customer("Guest", -1); // Guest customer
+        }
+        try {
+            int customerId = Integer.parseInt(input);
+            Customer customer = customerRepository.getCustomerById(customerId); // Served from memory
+            return customer != null ? customer : new Customer("Returning Customer", customerId); // Returning customer
+        } catch (NumberFormatException e) {
+            // Not an ID, so look it up as a name
+        }
+
+        List<Customer> matches = customerRepository.getCustomersByName(input); // Served from the name index
+        if (matches.isEmpty()) {
+            System.out.println("No customer named " + input + ". Defaulting to Guest.");
+            return new Customer("Guest", -1);
+        }
+        if (matches.size() == 1) {
+            return matches.get(0);
+        }
+        System.out.println("Several customers are named " + input + ":");
+        for (int i = 0; i < matches.size(); i++) {
+            System.out.printf("%d. %s (ID: %d)%n", i + 1, matches.get(i).getName(), matches.get(i).getCustomerId());
+        }
+        System.out.print("Enter the number of the customer: ");
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim()) - 1;
+            if (choice >= 0 && choice < matches.size()) {
+                return matches.get(choice);
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        System.out.println("Invalid choice. Defaulting to Guest.");
+        return new Customer("Guest", -1);
+    }
+
     /**
      * Displays the menu and handles input.
      */
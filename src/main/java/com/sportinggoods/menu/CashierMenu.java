@@ -26,6 +26,7 @@ public class CashierMenu extends BaseMenu {
     private DiscountRepository discountRepository;
     private FeedbackRepository feedbackRepository;
     private PickupOrderRepository orderRepository;
+    private CustomerRepository customerRepository;
 
     // Models
     private Inventory inventory;
@@ -56,6 +57,7 @@ public class CashierMenu extends BaseMenu {
         this.feedbackController = initManager.getFeedbackController();
         this.feedbackRepository = initManager.getFeedbackRepo();
         this.orderRepository = initManager.getPickupOrderRepository();
+        this.customerRepository = initManager.getCustomerRepo();
     }
 
     @Override
@@ -214,21 +216,14 @@ public class CashierMenu extends BaseMenu {
     
             // Determine the type of discount applied (Store-Wide, Department, or Item-Specific)
             if (totalDiscount > 0) {
-                for (Discount discount : discountRepository.getDiscounts()) {
-                    if (discount.getTarget().equalsIgnoreCase(item.getName())) {
-                        discountType = discount.getType().equalsIgnoreCase("PERCENTAGE")
-                                ? String.format("%.0f%%", discount.getValue())
-                                : String.format("$%.2f", discount.getValue());
-                        break;
-                    } else if (discount.getTarget().equalsIgnoreCase(item.getDepartment())) {
-                        discountType = discount.getType().equalsIgnoreCase("PERCENTAGE")
-                                ? String.format("%.0f%% (Dept)", discount.getValue())
-                                : String.format("$%.2f (Dept)", discount.getValue());
-                    } else if (discount.getTarget().equalsIgnoreCase("Store-Wide")) {
-                        discountType = discount.getType().equalsIgnoreCase("PERCENTAGE")
-                                ? String.format("%.0f%% (Store)", discount.getValue())
-                                : String.format("$%.2f (Store)", discount.getValue());
-                    }
+                Discount discount = discountRepository.getApplicableDiscount(item);
+                if (discount != null) {
+                    String scope = discount.getTarget().equalsIgnoreCase(item.getName()) ? ""
+                            : discount.getTarget().equalsIgnoreCase(item.getDepartment()) ? " (Dept)"
+                            : " (Store)";
+                    discountType = discount.getType().equalsIgnoreCase("PERCENTAGE")
+                            ? String.format("%.0f%%", discount.getValue()) + scope
+                            : String.format("$%.2f", discount.getValue()) + scope;
                 }
             }
     
@@ -558,19 +553,7 @@ public class CashierMenu extends BaseMenu {
      * @return A Customer object representing the current customer.
      */
     private Customer getCustomerDetails() {
-        System.out.print("Enter Customer ID (or press Enter for Guest): ");
-        String customerIdInput = scanner.nextLine().trim();
-        if (customerIdInput.isEmpty()) {
-            return new Customer("Guest", -1); // Guest customer
-        } else {
-            try {
-                int customerId = Integer.parseInt(customerIdInput);
-                return new Customer("Returning Customer", customerId); // Returning customer
-            } catch (NumberFormatException e) {
-                System.out.println("Invalid Customer ID. Defaulting to Guest.");
-                return new Customer("Guest", -1);
-            }
-        }
+        return promptForCustomer(customerRepository);
     }
 
     /**
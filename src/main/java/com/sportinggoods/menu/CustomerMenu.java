@@ -29,6 +29,7 @@ public class CustomerMenu extends BaseMenu {
     private Employee employee;
     private FeedbackRepository feedbackRepository;
     private PickupOrderRepository orderRepository;
+    private CustomerRepository customerRepository;
 
     /**
      * Constructs a CustomerMenu with the provided InitializationManager and Scanner.
@@ -49,6 +50,7 @@ public class CustomerMenu extends BaseMenu {
         this.receiptRepo = initManager.getReceiptRepo();
         this.feedbackController = initManager.getFeedbackController();
         this.orderRepository = initManager.getPickupOrderRepository();
+        this.customerRepository = initManager.getCustomerRepo();
     }
 
     @Override
@@ -106,10 +108,7 @@ public class CustomerMenu extends BaseMenu {
 
         // Generate all time slots and fetch unavailable slots for the chosen date
         List<String> timeSlots = generateTimeSlots();
-        List<String> unavailableSlots = initManager.getAppointmentController().getAllAppointments().stream()
-                .filter(a -> a.getAppointmentDate().equals(appointmentDate) && a.getStoreId() == storeId)
-                .map(Appointment::getAppointmentTime)
-                .toList();
+        List<String> unavailableSlots = initManager.getAppointmentController().getBookedTimes(storeId, appointmentDate);
 
         // Display available time slots
         System.out.println("Available time slots:");
@@ -136,13 +135,18 @@ public class CustomerMenu extends BaseMenu {
         String chosenTime = timeSlots.get(timeSlotChoice);
 
         if (unavailableSlots.contains(chosenTime)) {
+            AppointmentSlotIndex.FreeSlot earliest = initManager.getAppointmentController().findEarliestFreeSlot(storeId);
+            if (earliest != null) {
+                System.out.println("Earliest available appointment: " + earliest);
+            }
+
             // Handle conflict: Offer waitlist or new time slot selection
             System.out.print("The selected time is unavailable. Would you like to join the waitlist? (yes/no): ");
             String waitlistChoice = scanner.nextLine().trim();
 
             if (waitlistChoice.equalsIgnoreCase("yes")) {
                 boolean addedToWaitlist = initManager.getAppointmentController().addToWaitlist(
-                        storeId, customerName, phoneNumber, itemName, issue);
+                        storeId, customerName, phoneNumber, itemName, issue, appointmentDate, chosenTime);
                 if (addedToWaitlist) {
                     System.out.println("You have been added to the waitlist.");
                 } else {
@@ -166,16 +170,7 @@ public class CustomerMenu extends BaseMenu {
 
 
     private List<String> generateTimeSlots() {
-        List<String> timeSlots = new ArrayList<>();
-        int startHour = 9; // 9 AM
-        int endHour = 17; // 5 PM
-
-        for (int hour = startHour; hour < endHour; hour++) {
-            timeSlots.add(String.format("%02d:00", hour));
-            timeSlots.add(String.format("%02d:30", hour));
-        }
-
-        return timeSlots;
+        return new ArrayList<>(AppointmentSlotIndex.SLOT_TIMES); // The slots the booking index tracks
     }
 
 
@@ -501,19 +496,7 @@ public class CustomerMenu extends BaseMenu {
      * @return A Customer object representing the current customer.
      */
     private Customer getCustomerDetails() {
-        System.out.print("Enter Customer ID (or press Enter for Guest): ");
-        String customerIdInput = scanner.nextLine().trim();
-        if (customerIdInput.isEmpty()) {
-            return new Customer("Guest", -1); // Guest customer
-        } else {
-            try {
-                int customerId = Integer.parseInt(customerIdInput);
-                return new Customer("Returning Customer", customerId); // Returning customer
-            } catch (NumberFormatException e) {
-                System.out.println("Invalid Customer ID. Defaulting to Guest.");
-                return new Customer("Guest", -1);
-            }
-        }
+        return promptForCustomer(customerRepository);
     }
 
     /**
@@ -2,6 +2,7 @@ package com.sportinggoods.menu;
 
 import com.sportinggoods.controller.AppointmentController;
 import com.sportinggoods.model.Appointment;
+import com.sportinggoods.repository.AppointmentSlotIndex;
 import com.sportinggoods.util.InitializationManager;
 
 import java.util.ArrayList;
@@ -195,10 +196,7 @@ public class DepartmentSpecialistMenu extends BaseMenu {
         String appointmentDate = scanner.nextLine();
 
         List<String> timeSlots = generateTimeSlots();
-        List<String> unavailableSlots = appointmentController.getAllAppointments().stream()
-                .filter(a -> a.getAppointmentDate().equals(appointmentDate) && a.getStoreId() == storeId)
-                .map(Appointment::getAppointmentTime)
-                .toList();
+        List<String> unavailableSlots = appointmentController.getBookedTimes(storeId, appointmentDate);
 
         System.out.println("Available time slots:");
         for (int i = 0; i < timeSlots.size(); i++) {
@@ -251,16 +249,7 @@ public class DepartmentSpecialistMenu extends BaseMenu {
      * Generates a list of available time slots (9 AM to 5 PM, every 30 minutes).
      */
     private List<String> generateTimeSlots() {
-        List<String> timeSlots = new ArrayList<>();
-        int startHour = 9; // 9 AM
-        int endHour = 17; // 5 PM
-
-        for (int hour = startHour; hour < endHour; hour++) {
-            timeSlots.add(String.format("%02d:00", hour));
-            timeSlots.add(String.format("%02d:30", hour));
-        }
-
-        return timeSlots;
+        return new ArrayList<>(AppointmentSlotIndex.SLOT_TIMES); // The slots the booking index tracks
     }
 
 
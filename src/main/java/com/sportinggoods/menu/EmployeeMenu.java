@@ -59,6 +59,7 @@ public class EmployeeMenu extends BaseMenu {
         invoker.register("4", this::viewLowStockRequests);
         invoker.register("5", this::joinTrainingProgram);
         invoker.register("6", this::viewMyTrainingAssignments);
+        invoker.register("7", this::runShippingWave);
 
     }
 
@@ -72,12 +73,13 @@ public class EmployeeMenu extends BaseMenu {
         System.out.println("4. View Low Stock Requests");
         System.out.println("5. Join Training Program");
         System.out.println("6. View My Training Assignments");
-        System.out.println("7. Back to Main Menu");
+        System.out.println("7. Ship All Confirmed Orders");
+        System.out.println("8. Back to Main Menu");
     }
 
     @Override
     protected boolean isExitChoice(String choice) {
-        return choice.equals("7");
+        return choice.equals("8");
     }
 
     @Override
@@ -224,6 +226,21 @@ public class EmployeeMenu extends BaseMenu {
         System.out.println("Order shipped successfully.");
     }
 
+    /**
+     * Ships every confirmed order for the store in one batch, e.g. at the end of the day.
+     */
+    private void runShippingWave() {
+        System.out.println("\nShip All Confirmed Orders:");
+
+        ShippingController.WaveResult result = shippingController.processShippingWave(storeId, inventory);
+        if (result == null) {
+            System.out.println("Please try again.");
+        } else {
+            System.out.println(result);
+        }
+        promptReturn();
+    }
+
     // ==========================
     // Helper Methods
     // ==========================
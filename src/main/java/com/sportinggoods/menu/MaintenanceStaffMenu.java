@@ -4,10 +4,8 @@ import com.sportinggoods.controller.MaintenanceRequestController;
 import com.sportinggoods.model.MaintenanceRequest;
 import com.sportinggoods.util.InitializationManager;
 
-import java.util.Comparator;
 import java.util.List;
 import java.util.Scanner;
-import java.util.stream.Collectors;
 
 /**
  * Represents the Maintenance Staff Menu in the Sporting Goods Management System.
@@ -73,27 +71,14 @@ public class MaintenanceStaffMenu extends BaseMenu {
      * If resolved, marks it as resolved. Otherwise, updates the status based on alternate flows.
      */
     private void fixMostUrgentIssue() {
-        List<MaintenanceRequest> requests = maintenanceRequestController.getAllRequests(storeId);
-
-        if (requests.isEmpty()) {
-            System.out.println("No maintenance issues logged.");
-            return;
-        }
+        // Claiming takes the issue off the queue, so no other technician is sent to it
+        MaintenanceRequest urgentRequest = maintenanceRequestController.claimNextRequest(storeId);
 
-        // Filter out resolved issues and those with timeRemaining == 0
-        List<MaintenanceRequest> pendingRequests = requests.stream()
-                .filter(request -> request.getTimeRemaining() > 0 && !"Resolved".equalsIgnoreCase(request.getStatus()))
-                .collect(Collectors.toList());
-
-        if (pendingRequests.isEmpty()) {
+        if (urgentRequest == null) {
             System.out.println("No pending maintenance issues.");
             return;
         }
 
-        // Sort by timeRemaining
-        pendingRequests.sort(Comparator.comparing(MaintenanceRequest::getTimeRemaining));
-
-        MaintenanceRequest urgentRequest = pendingRequests.get(0);
         System.out.println("\nMost Urgent Maintenance Issue:");
         System.out.println(urgentRequest);
 
@@ -162,7 +147,8 @@ public class MaintenanceStaffMenu extends BaseMenu {
                 break;
 
             default:
-                System.out.println("Invalid choice. No changes made.");
+                maintenanceRequestController.releaseRequest(request.getRequestId());
+                System.out.println("Invalid choice. The issue was returned to the queue.");
         }
     }
 
@@ -4,6 +4,7 @@ import com.sportinggoods.controller.*;
 import com.sportinggoods.model.*;
 import com.sportinggoods.repository.*;
 import com.sportinggoods.util.InitializationManager;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -294,6 +295,13 @@ public class ManagerMenu extends BaseMenu {
 
     private void viewMaintenanceRequests() {
         clearConsole();
+        List<MaintenanceRequest> escalated = initManager.getMaintenanceRequestController().takeEscalatedRequests(storeId);
+        if (!escalated.isEmpty()) {
+            System.out.println("\nOverdue requests escalated since your last check:");
+            escalated.forEach(request -> System.out.println("- " + request.getLocation() + " (" + request.getIssueType()
+                    + ") is now " + request.getUrgency()));
+        }
+
         List<MaintenanceRequest> requests = initManager.getMaintenanceRequestController().getAllRequests(storeId);
 
         if (requests.isEmpty()) {
@@ -399,10 +407,25 @@ public class ManagerMenu extends BaseMenu {
             if ("Outage".equalsIgnoreCase(utility.getStatus())) {
                 System.out.println("Alert: Outage reported for " + utility.getName());
             }
-            if (utility.getEnergyConsumption() > 1000) { // Example threshold
-                System.out.println("Alert: High energy consumption for " + utility.getName());
+            if (utilityController.isEnergyAnomalous(utility.getUtilityId(), storeId)) {
+                System.out.println("Alert: Unusual energy consumption for " + utility.getName());
+            }
+            EnergyTimeSeries.Stats lastDay = utilityController.getEnergyStats(utility.getUtilityId(), storeId, Duration.ofDays(1));
+            if (lastDay != null && lastDay.getReadings() > 0) {
+                System.out.println("  Last 24h: " + lastDay);
             }
         });
+
+        List<EnergyAnomalyDetector.Anomaly> anomalies = utilityController.takeEnergyAnomalies(storeId);
+        if (!anomalies.isEmpty()) {
+            System.out.println("\nEnergy anomalies since the last check (maintenance requests were raised):");
+            anomalies.forEach(anomaly -> System.out.println("- " + anomaly));
+        }
+
+        EnergyTimeSeries.Stats storeLastDay = utilityController.getStoreEnergyStats(storeId, Duration.ofDays(1));
+        if (storeLastDay != null && storeLastDay.getReadings() > 0) {
+            System.out.println("\nStore energy, last 24h: " + storeLastDay);
+        }
         promptReturn();
     }
 
@@ -446,13 +469,21 @@ public class ManagerMenu extends BaseMenu {
             return;
         }
 
-        System.out.print("Enter store hours (e.g., 09:00-21:00): ");
+        System.out.print("Enter store hours (e.g., 09:00-21:00, Mon-Fri 07:00-22:00;Sat/Sun 09:00-18:00, 24/7): ");
         String schedule = scanner.nextLine().trim();
 
         boolean scheduleUpdated = utilityController.updateSchedule(utilityId, storeId, schedule);
 
         if (scheduleUpdated) {
             System.out.println("Schedule set for " + utility.getName() + ": " + schedule);
+            if (UtilitySchedule.parse(schedule) == null) {
+                System.out.println("This schedule is not in a recognized format, so it will not be run automatically.");
+            } else {
+                LocalDateTime nextSwitch = utilityController.getNextScheduledSwitch(utilityId, storeId);
+                if (nextSwitch != null) {
+                    System.out.println("Next scheduled switch: " + nextSwitch);
+                }
+            }
         } else {
             System.out.println("Failed to update the schedule.");
         }
@@ -488,9 +519,13 @@ public class ManagerMenu extends BaseMenu {
         System.out.print("Enter season (Winter/Summer): ");
         String season = scanner.nextLine().trim();
 
-        utilityController.applySeasonalPreset(season);
+        UtilityRepository.BulkUpdateResult result = utilityController.applySeasonalPreset(season);
 
-        System.out.println("Seasonal preset applied for " + season + ".");
+        if (result.isSaved()) {
+            System.out.println("Seasonal preset applied for " + season + ": " + result);
+        } else {
+            System.out.println("Failed to save the seasonal preset.");
+        }
         promptReturn();
     }
 
@@ -10,8 +10,10 @@ import com.sportinggoods.model.Item;
 import com.sportinggoods.model.Schedule;
 import com.sportinggoods.model.Store;
 import com.sportinggoods.model.Utility;
+import com.sportinggoods.repository.EnergyTimeSeries;
 import com.sportinggoods.util.InitializationManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Scanner;
@@ -33,6 +35,7 @@ public class RegionalManagerMenu extends BaseMenu {
         invoker.register("2", this::addStore);
         invoker.register("3", this::deleteStore);
         invoker.register("4", this::selectStore);
+        invoker.register("5", this::viewTopConsumingStores);
     }
 
     @Override
@@ -43,12 +46,13 @@ public class RegionalManagerMenu extends BaseMenu {
         System.out.println("2. Add Store");
         System.out.println("3. Delete Store");
         System.out.println("4. Select Store");
-        System.out.println("5. Exit");
+        System.out.println("5. Top Energy-Consuming Stores (24h)");
+        System.out.println("6. Exit");
     }
 
     @Override
     protected boolean isExitChoice(String choice) {
-        return choice.equals("5");
+        return choice.equals("6");
     }
 
     @Override
@@ -226,6 +230,24 @@ public class RegionalManagerMenu extends BaseMenu {
         }
     }
 
+    /**
+     * Lists the stores that used the most energy over the last 24 hours.
+     */
+    private void viewTopConsumingStores() {
+        clearConsole();
+        List<EnergyTimeSeries.StoreUsage> topStores = initManager.getUtilityController().getTopConsumingStores(20, Duration.ofDays(1));
+        if (topStores.isEmpty()) {
+            System.out.println("No energy readings in the last 24 hours.");
+        } else {
+            System.out.println("Top Energy-Consuming Stores (last 24h):");
+            int rank = 1;
+            for (EnergyTimeSeries.StoreUsage usage : topStores) {
+                System.out.println(rank++ + ". " + usage);
+            }
+        }
+        pause();
+    }
+
     /**
      * Pauses for user input.
      */
@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Appointment {
     private String appointmentId;
     private int storeId;
@@ -48,10 +50,10 @@ public class Appointment {
 
     // From CSV string
     public static Appointment fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
         return new Appointment(
-                tokens[0], Integer.parseInt(tokens[1]), tokens[2], tokens[3], tokens[4],
-                tokens[5], tokens[6], tokens[7], tokens[8]
+                tokens.getString(0), tokens.getInt(1), tokens.getString(2), tokens.getString(3), tokens.getString(4),
+                tokens.getString(5), tokens.getString(6), tokens.getString(7), tokens.getString(8)
         );
     }
 }
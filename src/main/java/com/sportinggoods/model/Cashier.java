@@ -1,6 +1,7 @@
 package com.sportinggoods.model;
 
 import com.sportinggoods.repository.ReceiptRepository;
+import com.sportinggoods.util.CsvTokenizer;
 import java.time.LocalDate;
 
 public class Cashier extends Employee {
@@ -16,12 +17,12 @@ public class Cashier extends Employee {
 
     // Creates a Cashier object from a CSV string
     public static Cashier fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 2) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 2) {
             return null;  // Invalid format
         }
-        int id = Integer.parseInt(tokens[0]);
-        String name = tokens[1];
+        int id = tokens.getInt(0);
+        String name = tokens.getString(1);
         return new Cashier(name, id, null, 1);
     }
 
@@ -1,5 +1,6 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
 import java.time.LocalDate;
 
 public class Coupon {
@@ -41,7 +42,7 @@ public class Coupon {
     }
 
     public static Coupon fromCSV(String csvLine) {
-        String[] parts = csvLine.split(",", -1);
-        return new Coupon(parts[0], parts[1], Double.parseDouble(parts[2]), LocalDate.parse(parts[3]));
+        CsvTokenizer parts = CsvTokenizer.of(csvLine);
+        return new Coupon(parts.getString(0), parts.getString(1), parts.getDouble(2), parts.getDate(3));
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Customer {
     private String name;
     private int customerId;
@@ -33,12 +35,12 @@ public class Customer {
 
     // Creates a Customer object from a CSV string
     public static Customer fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 2) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 2) {
             return null;  // Invalid format
         }
-        int customerId = Integer.parseInt(tokens[0]);
-        String name = tokens[1];
+        int customerId = tokens.getInt(0);
+        String name = tokens.getString(1);
         return new Customer(name, customerId);
     }
 
@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Discount {
     private String target;
     private double value;
@@ -28,11 +30,11 @@ public class Discount {
     }
 
     public static Discount fromCSV(String csv) {
-        String[] parts = csv.split(",");
-        if (parts.length != 3) return null;
-        String target = parts[0];
-        double value = Double.parseDouble(parts[1]);
-        String type = parts[2];
+        CsvTokenizer parts = CsvTokenizer.of(csv);
+        if (parts.size() != 3) return null;
+        String target = parts.getString(0);
+        double value = parts.getDouble(1);
+        String type = parts.getString(2);
         return new Discount(target, value, type);
     }
 
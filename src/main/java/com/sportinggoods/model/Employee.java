@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Employee {
     protected int id;
     protected String name;
@@ -82,15 +84,15 @@ public class Employee {
     }
 
     public static Employee fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",", -1); // Allow empty tokens for missing values
-        if (tokens.length < 5) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine); // Keeps empty tokens for missing values
+        if (tokens.size() < 5) {
             return null; // Invalid format
         }
-        int id = Integer.parseInt(tokens[0]);
-        String name = tokens[1];
-        int storeID = Integer.parseInt(tokens[2]);
-        String position = tokens[3];
-        String department = tokens[4];
+        int id = tokens.getInt(0);
+        String name = tokens.getString(1);
+        int storeID = tokens.getInt(2);
+        String position = tokens.getString(3);
+        String department = tokens.getString(4);
 
         Employee employee = new Employee(name, id, null, storeID);
         employee.setPosition(position);
@@ -7,17 +7,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class EmployeeList {
-    private ArrayList<Employee> employees = new ArrayList<>();
+    private List<Employee> employees = new ArrayList<>();
     private static final String FILE_PATH = "data/employee.csv";
 
 
-    public EmployeeList(int storeID){
-        employees = loadStoreEmployeesFromFile(storeID);
-    }
-
-    public ArrayList<Employee> getEmployees(){
-        return employees;
-    }
+    private EmployeeController employeeController;
 
     public EmployeeList(int storeID) {
         this.employeeController = new EmployeeController(new EmployeeRepository());
@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class EmployeeTraining {
     private int assignmentId;
     private int employeeId;
@@ -76,16 +78,16 @@ public class EmployeeTraining {
 
     // CSV Deserialization
     public static EmployeeTraining fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",", -1); // Allow empty fields
-        if (tokens.length < 6) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine); // Keeps empty fields
+        if (tokens.size() < 6) {
             return null; // Invalid format
         }
-        int assignmentId = Integer.parseInt(tokens[0]);
-        int employeeId = Integer.parseInt(tokens[1]);
-        int programId = Integer.parseInt(tokens[2]);
-        String status = tokens[3];
-        String deadline = tokens[4];
-        int storeId = Integer.parseInt(tokens[5]);
+        int assignmentId = tokens.getInt(0);
+        int employeeId = tokens.getInt(1);
+        int programId = tokens.getInt(2);
+        String status = tokens.getString(3);
+        String deadline = tokens.getString(4);
+        int storeId = tokens.getInt(5);
         return new EmployeeTraining(assignmentId, employeeId, programId, status, deadline, storeId);
     }
 }
@@ -1,24 +1,80 @@
 package com.sportinggoods.model;
 
 import com.sportinggoods.repository.DiscountRepository;
+import com.sportinggoods.util.CsvTokenizer;
+import com.sportinggoods.util.InventoryJournal;
+import com.sportinggoods.util.WriteBehindFile;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 // Manages inventory
 public class Inventory {
     //private Map<String, Item> items = new HashMap<>();
     private ArrayList<Item> items = new ArrayList<>();
+    // Shared with every other Inventory of the same store
+    private StoreItems storeItems;
+    private int storeID;
+    // Every store's items, parsed once from the file and shared by all Inventory views
+    private static Map<Integer, StoreItems> allStoreItems;
     private static final String FILE_PATH = "data/inventory.csv";
+    private static final String HEADER = "name,price,department,quantity,storeID";
+    private static final String JOURNAL_FILE_PATH = "data/inventory_journal.csv";
+    // Row at the end of the snapshot holding the txnId of the last journal record folded into it
+    private static final String FOLDED_KEY = "#folded";
+    // Shared by every Inventory so all stores' changes are merged into the one file
+    private static final WriteBehindFile inventoryFile = new WriteBehindFile(FILE_PATH, HEADER, Inventory::rowKey);
+    // Quantity changes are appended here and folded into the snapshot whenever it is rewritten
+    private static final InventoryJournal journal = new InventoryJournal(JOURNAL_FILE_PATH);
+    // Set while a rewrite to fold the oversized journal is queued, so a burst of changes queues only one
+    private static final AtomicBoolean compactionRequested = new AtomicBoolean();
+    // Striped locks guarding item quantities, so registers selling different items never wait on each other
+    private static final int STOCK_LOCK_STRIPES = Integer.getInteger("inventory.lockStripes", 64);
+    private static final ReentrantLock[] stockLocks = new ReentrantLock[Math.max(1, STOCK_LOCK_STRIPES)];
+
+    static {
+        for (int i = 0; i < stockLocks.length; i++) {
+            stockLocks[i] = new ReentrantLock();
+        }
+    }
+
+    static {
+        inventoryFile.setMergeHook(new WriteBehindFile.MergeHook() {
+            @Override
+            public void beforeMerge(Map<String, String> rows) {
+                journal.lock(); // Held until afterMerge so no change lands between fold and truncate
+                foldJournal(rows);
+            }
+
+            @Override
+            public void afterMerge(boolean written) {
+                try {
+                    if (written) {
+                        journal.truncate();
+                    }
+                } finally {
+                    compactionRequested.set(false); // The journal was folded, or the next change asks again
+                    journal.unlock();
+                }
+            }
+        });
+    }
     private static final String LOW_STOCK_FILE = "data/lowStock.csv";
     private static final int LOW_STOCK_THRESHOLD = 5;
     private static final int RESTOCK_LEVEL = 10;
 
     //Constructor
     public Inventory(int storeID) {
-        items = loadStoreItemsFromFile(storeID);
+        this.storeID = storeID;
+        storeItems = storeItemsFor(storeID);
+        items = storeItems.items;
     }
 
     public ArrayList<Item> getItems(){
@@ -28,12 +84,74 @@ public class Inventory {
 
     //Getter
     public Item getItem(String itemName) {
-        for (Item item : items) {
-            if (item.getName().equalsIgnoreCase(itemName)) { // Case-insensitive comparison
-                return item;
+        if (itemName == null) {
+            return null;
+        }
+        return storeItems.itemIndex.get(itemKey(itemName, storeID)); // Case-insensitive lookup, null if not found
+    }
+
+    // ==========================
+    // Indexes
+    // ==========================
+
+    /**
+     * Builds the index key for an item. Names are compared case-insensitively,
+     * so the key uses the lower-cased name together with the store ID.
+     */
+    private static String itemKey(String itemName, int storeID) {
+        return itemName.toLowerCase() + ":" + storeID;
+    }
+
+    private static String departmentKey(String department) {
+        return department == null ? "" : department.trim().toLowerCase();
+    }
+
+    /**
+     * One store's items together with their lookup indexes. Every Inventory
+     * created for the store works on the same instance.
+     */
+    private static final class StoreItems {
+        private final ArrayList<Item> items = new ArrayList<>();
+        // Lookup indexes over the same Item objects held in items
+        private final Map<String, Item> itemIndex = new ConcurrentHashMap<>(); // Read by every register without locking
+        private final Map<String, List<Item>> departmentIndex = new HashMap<>();
+
+        private void add(Item item) {
+            items.add(item);
+            index(item);
+        }
+
+        private void remove(Item item) {
+            items.remove(item);
+            unindex(item);
+        }
+
+        // The first item with a given name wins, matching the old linear scan
+        private void index(Item item) {
+            itemIndex.putIfAbsent(itemKey(item.getName(), item.getStoreID()), item);
+            departmentIndex.computeIfAbsent(departmentKey(item.getDepartment()), k -> new ArrayList<>()).add(item);
+        }
+
+        private void unindex(Item item) {
+            itemIndex.remove(itemKey(item.getName(), item.getStoreID()), item);
+            List<Item> bucket = departmentIndex.get(departmentKey(item.getDepartment()));
+            if (bucket != null) {
+                bucket.remove(item);
+                if (bucket.isEmpty()) {
+                    departmentIndex.remove(departmentKey(item.getDepartment()));
+                }
             }
         }
-        return null; // Return null if the item is not found
+    }
+
+    /**
+     * Returns the shared items of a store, loading the inventory file on first use.
+     */
+    private static synchronized StoreItems storeItemsFor(int storeID) {
+        if (allStoreItems == null) {
+            allStoreItems = loadItemsFromFile();
+        }
+        return allStoreItems.computeIfAbsent(storeID, id -> new StoreItems());
     }
 
     /**
@@ -59,20 +177,19 @@ public class Inventory {
      * @param quantityChange The change in quantity (can be positive or negative).
      */
     public void updateQuantity(String itemName, int quantityChange) {
-        for (Item item : items) {
-            if (item.getName().equalsIgnoreCase(itemName)) {
-                int newQuantity = item.getQuantity() + quantityChange;
-                if (newQuantity < 0) {
-                    System.out.println("Error: Insufficient stock for " + itemName);
-                    return; // Prevent negative inventory
-                }
-                item.setQuantity(newQuantity);
-                System.out.println("Updated " + itemName + " quantity to " + newQuantity);
-                saveItemsToFile(); // Save only after updating the specific item
-                return;
-            }
+        Item item = getItem(itemName);
+        if (item == null) {
+            System.out.println("Item not found: " + itemName);
+            return;
         }
-        System.out.println("Item not found: " + itemName);
+        Map<Item, Integer> change = new LinkedHashMap<>();
+        change.put(item, quantityChange);
+        // Checked under the item's lock so two registers can never take the same last unit
+        if (recordQuantityChanges(change, journal.nextTxnId(), quantityChange < 0) != null) {
+            System.out.println("Error: Insufficient stock for " + itemName);
+            return; // Prevent negative inventory
+        }
+        System.out.println("Updated " + itemName + " quantity to " + item.getQuantity());
     }
 
 
@@ -97,21 +214,13 @@ public class Inventory {
     // }
 
     public void addItem(Item item) {
-        boolean itemFound = false;
-        for (Item temp : items) {
-            if (temp.getName().equalsIgnoreCase(item.getName()) && temp.getStoreID() == item.getStoreID()) {
-                temp.setQuantity(temp.getQuantity() + item.getQuantity());
-                itemFound = true;
-                break;
-            }
-        }
-        if (!itemFound) {
-            items.add(item);
-        }
-        try {
-            saveItemsToFile(); // Save updated list to file
-        } catch (Exception e) {
-            System.err.println("Error saving items to file: " + e.getMessage());
+        StoreItems target = item.getStoreID() == storeID ? storeItems : storeItemsFor(item.getStoreID());
+        Item temp = target.itemIndex.get(itemKey(item.getName(), item.getStoreID()));
+        if (temp != null) {
+            recordQuantityChange(temp, item.getQuantity(), journal.nextTxnId());
+        } else {
+            target.add(item);
+            markDirty(item);
         }
     }
 
@@ -134,27 +243,17 @@ public class Inventory {
 
     public void addItems(ArrayList<Item> newItems) {
         for (Item newItem : newItems) {
-            boolean itemFound = false;
-
             // Check if the item already exists in the inventory
-            for (Item existingItem : items) {
-                if (existingItem.getName().equalsIgnoreCase(newItem.getName())) {
-                    // Item is in the inventory, update quantity
-                    int newQuantity = existingItem.getQuantity() + newItem.getQuantity();
-                    existingItem.setQuantity(newQuantity);
-                    itemFound = true;
-                    break;
-                }
-            }
-
-            if (!itemFound) {
+            Item existingItem = getItem(newItem.getName());
+            if (existingItem != null) {
+                // Item is in the inventory, update quantity
+                recordQuantityChange(existingItem, newItem.getQuantity(), journal.nextTxnId());
+            } else {
                 // Item is not in the inventory, add it
-                items.add(newItem);
+                storeItems.add(newItem);
+                markDirty(newItem);
             }
         }
-
-        // Save updated list to file
-        saveItemsToFile();
     }
 
     // public List<Item> getAllItems() {
@@ -162,16 +261,8 @@ public class Inventory {
     // }
 
     public List<Item> getItemsByDepartment(String department) {
-        String normalizedDepartment = department.trim().toLowerCase(); // Normalize user input
-        List<Item> itemsInDepartment = new ArrayList<>();
-    
-        for (Item item : items) {
-            if (item.getDepartment().trim().toLowerCase().equals(normalizedDepartment)) {
-                itemsInDepartment.add(item);
-            }
-        }
-    
-        return itemsInDepartment;
+        List<Item> itemsInDepartment = storeItems.departmentIndex.get(departmentKey(department)); // Normalize user input
+        return itemsInDepartment == null ? new ArrayList<>() : new ArrayList<>(itemsInDepartment);
     }
 
     /**
@@ -182,14 +273,17 @@ public class Inventory {
     public void deleteItem(Item item){
         Item temp = getItem(item.getName());
         if(temp != null){ // item is in the inventory
-            temp.setQuantity(temp.getQuantity() - item.getQuantity());
-            if(temp.getQuantity() < 0){
-                temp.setQuantity(0);
+            ReentrantLock lock = stockLockFor(temp);
+            lock.lock();
+            try {
+                temp.setQuantity(Math.max(0, temp.getQuantity() - item.getQuantity()));
+                markDirty(temp); // Persist the zero quantity even when the item is dropped
+            } finally {
+                lock.unlock();
             }
             if(temp.getQuantity() == 0){
-                items.remove(temp);
+                storeItems.remove(temp);
             }
-            saveItemsToFile();
         }
         else{
             System.out.println("Item to remove not found");
@@ -201,9 +295,7 @@ public class Inventory {
             Item temp1 = itemList.get(i);
             Item temp2 = getItem(temp1.getName());
             if(temp2 != null){ //item exists in inventory
-                int newQuantity = temp2.getQuantity() - temp1.getQuantity();
-                temp2.setQuantity(newQuantity);
-                saveItemsToFile();
+                recordQuantityChange(temp2, -temp1.getQuantity(), journal.nextTxnId());
             }
             else{
                 System.out.println("Item: " + temp1.getName() + " is not in the inventory");
@@ -216,58 +308,19 @@ public class Inventory {
         if (item == null) {
             throw new IllegalArgumentException("Item not found: " + itemName);
         }
-    
-        double originalPrice = item.getPrice();
-        double totalDiscount = 0;
-    
-        // Check for item-specific discount
-        double itemDiscount = discountRepository.getDiscounts().stream()
-                .filter(d -> d.getTarget().equalsIgnoreCase(itemName))
-                .mapToDouble(d -> d.getType().equalsIgnoreCase("PERCENTAGE")
-                                 ? originalPrice * (d.getValue() / 100)
-                                 : d.getValue())
-                .max()
-                .orElse(0);
-    
-        // Check for department-wide discount
-        double departmentDiscount = discountRepository.getDepartmentDiscount(item.getDepartment());
-        if (departmentDiscount > 0) {
-            departmentDiscount = discountRepository.getDiscounts().stream()
-                    .filter(d -> d.getTarget().equalsIgnoreCase(item.getDepartment()))
-                    .mapToDouble(d -> d.getType().equalsIgnoreCase("PERCENTAGE")
-                                     ? originalPrice * (d.getValue() / 100)
-                                     : d.getValue())
-                    .max()
-                    .orElse(0);
-        }
-    
-        // Check for store-wide discount
-        double storeWideDiscount = discountRepository.getStoreWideDiscount();
-        if (storeWideDiscount > 0) {
-            storeWideDiscount = discountRepository.getDiscounts().stream()
-                    .filter(d -> d.getTarget().equalsIgnoreCase("Store-Wide"))
-                    .mapToDouble(d -> d.getType().equalsIgnoreCase("PERCENTAGE")
-                                     ? originalPrice * (d.getValue() / 100)
-                                     : d.getValue())
-                    .max()
-                    .orElse(0);
-        }
-    
-        // Apply the highest priority discount
-        totalDiscount = Math.max(itemDiscount, Math.max(departmentDiscount, storeWideDiscount));
-    
-        // Ensure the discount does not exceed the price
-        totalDiscount = Math.min(totalDiscount, originalPrice);
-    
-        return originalPrice - totalDiscount;
+        return discountRepository.getEffectivePrice(item); // Served from the repository's price table
     }
 
 
     public void swapStore(String itemName, int newStoreID){
         Item temp = getItem(itemName);
         if(temp != null){
+            // Move the item into the new store's shared items
+            storeItems.remove(temp);
+            inventoryFile.remove(temp.getName() + ":" + temp.getStoreID());
             temp.setStoreID(newStoreID);
-            saveItemsToFile();
+            storeItemsFor(newStoreID).add(temp);
+            markDirty(temp);
         }
         else{
             System.out.println("Item is not in the inventory");
@@ -275,6 +328,37 @@ public class Inventory {
     }
 
 
+    /**
+     * Applies quantity changes for several items as a single transaction, e.g. all the
+     * lines of one sale. Either every change is applied or none is: the batch is refused
+     * if an item is missing or any quantity would go negative.
+     * Lines for the same item are combined.
+     *
+     * @param quantityChanges The change in quantity for each item name.
+     * @return True if all changes were applied, false if nothing was changed.
+     */
+    public boolean commitQuantityChanges(Map<String, Integer> quantityChanges) {
+        Map<Item, Integer> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> change : quantityChanges.entrySet()) {
+            Item item = getItem(change.getKey());
+            if (item == null) {
+                System.out.println("Item not found: " + change.getKey());
+                return false;
+            }
+            changes.merge(item, change.getValue(), Integer::sum);
+        }
+        if (changes.isEmpty()) {
+            return true;
+        }
+
+        Item shortItem = recordQuantityChanges(changes, journal.nextTxnId(), true);
+        if (shortItem != null) {
+            System.out.println("Error: Insufficient stock for " + shortItem.getName());
+            return false;
+        }
+        return true;
+    }
+
     // Checks if an item is available in the required quantity
     public boolean checkAvailability(String itemName, int quantity) {
         Item item = getItem(itemName);
@@ -282,21 +366,38 @@ public class Inventory {
     }
 
 
-    // Loads items from a CSV file into the inventory map
-    private ArrayList<Item> loadStoreItemsFromFile(int storeID) {
-        ArrayList<Item> loadedItems = new ArrayList<>();
+    // Loads every store's items from the CSV file in a single pass, partitioned by storeID
+    private static Map<Integer, StoreItems> loadItemsFromFile() {
+        List<Item> items = new ArrayList<>();
+        long foldedThrough = 0;
         try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
             String line;
             reader.readLine(); // Skip header
             while ((line = reader.readLine()) != null) {
+                if (FOLDED_KEY.equals(rowKey(line))) {
+                    foldedThrough = foldedThroughTxnId(line);
+                    continue;
+                }
                 Item item = Item.fromCSV(line);
-                if (item != null && item.getStoreID() == storeID) {
-                    loadedItems.add(item);
+                if (item != null) {
+                    items.add(item);
                 }
             }
         } catch (IOException e) {
             System.out.println("Error loading inventory from file: " + e.getMessage());
         }
+
+        // Replay quantity changes made since the snapshot was written
+        journal.reserveTxnIdsThrough(foldedThrough);
+        Map<String, Integer> changes = journal.netChanges(foldedThrough);
+        Map<Integer, StoreItems> loadedItems = new HashMap<>();
+        for (Item item : items) {
+            Integer change = changes.get(item.getName() + ":" + item.getStoreID());
+            if (change != null) {
+                item.setQuantity(item.getQuantity() + change);
+            }
+            loadedItems.computeIfAbsent(item.getStoreID(), id -> new StoreItems()).add(item);
+        }
         return loadedItems;
     }
 
@@ -313,40 +414,163 @@ public class Inventory {
     //     }
     // }
 
+    /**
+     * Queues every item of this inventory for saving. Used after bulk edits
+     * (e.g. price changes) made directly on the Item objects.
+     */
     public void saveItemsToFile() {
-        // Load the existing inventory from the file
-        Map<String, Item> inventoryMap = new HashMap<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line = reader.readLine(); // Skip the header
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue; // Skip empty lines
-                Item item = Item.fromCSV(line);
-                if (item != null) {
-                    inventoryMap.put(item.getName() + ":" + item.getStoreID(), item); // Use unique key
+        for (Item item : items) {
+            markDirty(item); // Replace or add the updated item
+        }
+    }
+
+    /**
+     * Queues a single item for saving. Rows are merged into the file by the
+     * write-behind flusher, keyed the same way the file is (name:storeID).
+     */
+    private void markDirty(Item item) {
+        ReentrantLock lock = stockLockFor(item);
+        lock.lock(); // So the row is never captured between a quantity change and its journal record
+        try {
+            inventoryFile.put(item.getName() + ":" + item.getStoreID(), item.toCSV());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes an item's quantity and appends the change to the journal instead of
+     * rewriting the snapshot. A row already waiting in the write-behind queue is kept
+     * current so the next snapshot does not count the change twice.
+     */
+    private void recordQuantityChange(Item item, int quantityChange, long txnId) {
+        Map<Item, Integer> change = new LinkedHashMap<>();
+        change.put(item, quantityChange);
+        recordQuantityChanges(change, txnId, false);
+    }
+
+    /**
+     * Applies several quantity changes as one transaction. The items' stock locks are
+     * taken in a fixed order, so concurrent batches never deadlock and only batches that
+     * share an item wait for each other. The records are appended together in a single
+     * write under one txnId while the journal is locked, so a compaction never sees only
+     * part of them.
+     *
+     * @param changes       The change for each item.
+     * @param txnId         The transaction the changes belong to.
+     * @param requireStock  True to refuse the whole batch if any quantity would go negative.
+     * @return The first item that lacks stock (nothing is changed), or null if applied.
+     */
+    private Item recordQuantityChanges(Map<Item, Integer> changes, long txnId, boolean requireStock) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Item item : changes.keySet()) {
+            stripes.add(stripeFor(item));
+        }
+        for (int stripe : stripes) {
+            stockLocks[stripe].lock();
+        }
+        try {
+            if (requireStock) {
+                for (Map.Entry<Item, Integer> change : changes.entrySet()) {
+                    if (change.getKey().getQuantity() + change.getValue() < 0) {
+                        return change.getKey();
+                    }
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error reading inventory file: " + e.getMessage());
-        }
 
-        // Update the inventoryMap with the current items
-        for (Item item : items) {
-            String key = item.getName() + ":" + item.getStoreID();
-            inventoryMap.put(key, item); // Replace or add the updated item
+            List<String> records = new ArrayList<>();
+            for (Map.Entry<Item, Integer> change : changes.entrySet()) {
+                Item item = change.getKey();
+                item.setQuantity(item.getQuantity() + change.getValue());
+                records.add(InventoryJournal.record(item.getName(), item.getStoreID(), change.getValue(), txnId));
+            }
+
+            // Only the append itself is serialized across registers
+            boolean journaled;
+            journal.lock();
+            try {
+                journaled = journal.append(records);
+                if (journaled) {
+                    for (Item item : changes.keySet()) {
+                        inventoryFile.refresh(item.getName() + ":" + item.getStoreID(), item.toCSV());
+                    }
+                }
+            } finally {
+                journal.unlock();
+            }
+            if (!journaled) {
+                // Journal unavailable, fall back to saving the whole rows
+                for (Item item : changes.keySet()) {
+                    markDirty(item);
+                }
+            }
+        } finally {
+            for (int stripe : stripes.descendingSet()) {
+                stockLocks[stripe].unlock();
+            }
+        }
+        if (journal.needsCompaction() && compactionRequested.compareAndSet(false, true)) {
+            inventoryFile.requestRewrite(); // Fold the journal into a new snapshot
         }
+        return null;
+    }
 
-        // Write the updated inventory back to the file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            writer.write("name,price,department,quantity,storeID\n"); // Write header
-            for (Item item : inventoryMap.values()) {
-                writer.write(item.toCSV());
-                writer.newLine();
+    private static int stripeFor(Item item) {
+        return Math.floorMod(System.identityHashCode(item), stockLocks.length);
+    }
+
+    private static ReentrantLock stockLockFor(Item item) {
+        return stockLocks[stripeFor(item)];
+    }
+
+    /**
+     * Applies the journal's net changes to snapshot rows read from the file.
+     */
+    // Adds the journal records not yet in the snapshot, and notes the last one in the same
+    // write, so a journal left behind by a crash before truncate() is not replayed twice
+    private static void foldJournal(Map<String, String> rows) {
+        String folded = rows.remove(FOLDED_KEY);
+        long foldedThrough = folded == null ? 0 : foldedThroughTxnId(folded);
+        for (Map.Entry<String, Integer> change : journal.netChanges(foldedThrough).entrySet()) {
+            String line = rows.get(change.getKey());
+            Item item = line == null ? null : Item.fromCSV(line);
+            if (item != null) {
+                item.setQuantity(item.getQuantity() + change.getValue());
+                rows.put(change.getKey(), item.toCSV());
             }
-        } catch (IOException e) {
-            System.err.println("Error saving inventory to file: " + e.getMessage());
+        }
+        long lastTxnId = journal.getLastRecordTxnId();
+        if (lastTxnId != 0) {
+            foldedThrough = lastTxnId;
+        }
+        if (foldedThrough != 0) {
+            rows.put(FOLDED_KEY, FOLDED_KEY + "," + foldedThrough); // Re-added on every fold
         }
     }
 
+    private static long foldedThroughTxnId(String line) {
+        try {
+            return Long.parseLong(line.substring(line.indexOf(',') + 1).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String rowKey(String line) {
+        if (line.startsWith(FOLDED_KEY + ",")) {
+            return FOLDED_KEY;
+        }
+        Item item = Item.fromCSV(line);
+        return item == null ? null : item.getName() + ":" + item.getStoreID(); // Use unique key
+    }
+
+    /**
+     * Writes every pending inventory change to the file. Called at shutdown.
+     */
+    public static void flush() {
+        inventoryFile.flush();
+    }
+
 
     public void printInventory(){
         System.out.println("Inventory:");
@@ -425,19 +649,19 @@ public class Inventory {
                     continue;
                 }
                 if (line.trim().isEmpty()) continue; // Skip empty lines
-                String[] parts = line.split(",");
-                if (parts.length < 5) { // Validate structure
+                CsvTokenizer parts = CsvTokenizer.of(line);
+                if (parts.size() < 5) { // Validate structure
                     System.err.println("Error parsing low stock line: " + line);
                     continue;
                 }
 
-                int fileStoreID = Integer.parseInt(parts[0]);
+                int fileStoreID = parts.getInt(0);
                 if (fileStoreID == storeID) {
                     // Parse item details
-                    String name = parts[1];
-                    double price = Double.parseDouble(parts[2]);
-                    String department = parts[3];
-                    int quantity = Integer.parseInt(parts[4]);
+                    String name = parts.getString(1);
+                    double price = parts.getDouble(2);
+                    String department = parts.getString(3);
+                    int quantity = parts.getInt(4);
 
                     lowStockItems.add(new Item(name, price, department, quantity, storeID));
                 } else {
@@ -458,15 +682,20 @@ public class Inventory {
         for (Item lowStockItem : lowStockItems) {
             Item inventoryItem = getItem(lowStockItem.getName());
             if (inventoryItem != null && inventoryItem.getStoreID() == storeID) {
-                inventoryItem.setQuantity(RESTOCK_LEVEL);
+                ReentrantLock lock = stockLockFor(inventoryItem);
+                lock.lock();
+                try {
+                    inventoryItem.setQuantity(RESTOCK_LEVEL);
+                    markDirty(inventoryItem); // Save updated inventory to file
+                } finally {
+                    lock.unlock();
+                }
                 System.out.println("Restocked '" + inventoryItem.getName() + "' to quantity " + RESTOCK_LEVEL + ".");
             } else {
                 System.out.println("Item '" + lowStockItem.getName() + "' not found in inventory for Store ID: " + storeID + ". Skipping restock.");
             }
         }
 
-        // Save updated inventory to file
-        saveItemsToFile();
         System.out.println("Inventory updated successfully for Store ID: " + storeID + ".");
 
         // Rewrite 'lowStock.csv' with remaining entries
@@ -1,11 +1,13 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Item {
     // private int id;
     private String name;
     private double price;
     private String department;
-    private int quantity;
+    private volatile int quantity; // Read by every register; changed under the inventory's stock locks
     private int storeID;
 
     // Constructor
@@ -59,15 +61,15 @@ public class Item {
 
     // Creates an Item object from a CSV string
     public static Item fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 5) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 5) {
             return null;  // Invalid format
         }
-        String name = tokens[0];
-        double price = Double.parseDouble(tokens[1]);
-        String department = tokens[2];
-        int quantity = Integer.parseInt(tokens[3]);
-        int id = Integer.parseInt(tokens[4]);
+        String name = tokens.getString(0);
+        double price = tokens.getDouble(1);
+        String department = tokens.getString(2);
+        int quantity = tokens.getInt(3);
+        int id = tokens.getInt(4);
         return new Item(name, price, department, quantity, id);
     }
 
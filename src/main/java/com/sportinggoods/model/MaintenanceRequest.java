@@ -1,5 +1,6 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
 import java.time.LocalDateTime;
 import java.time.Duration;
 
@@ -12,6 +13,7 @@ public class MaintenanceRequest {
     private long timeRemaining; // Time in seconds
     private String status; // Open, In Progress, Resolved
     private LocalDateTime lastUpdated;
+    private LocalDateTime nextEscalation; // When an escalated request is next checked; null if not escalated
 
     public MaintenanceRequest(String requestId, int storeId, String location, String issueType, String urgency, long timeRemaining, String status, LocalDateTime lastUpdated) {
         this.requestId = requestId;
@@ -91,6 +93,14 @@ public class MaintenanceRequest {
         this.lastUpdated = lastUpdated;
     }
 
+    public LocalDateTime getNextEscalation() {
+        return nextEscalation;
+    }
+
+    public void setNextEscalation(LocalDateTime nextEscalation) {
+        this.nextEscalation = nextEscalation;
+    }
+
     // Decrease timeRemaining based on elapsed time
     public void updateTimeRemaining() {
         LocalDateTime now = LocalDateTime.now();
@@ -115,23 +125,29 @@ public class MaintenanceRequest {
 
 
     public String toCSV() {
-        return requestId + "," + storeId + "," + location + "," + issueType + "," + urgency + "," + timeRemaining + "," + status + "," + lastUpdated;
+        return requestId + "," + storeId + "," + location + "," + issueType + "," + urgency + "," + timeRemaining + "," + status + "," + lastUpdated + ","
+                + (nextEscalation == null ? "" : nextEscalation);
     }
 
     public static MaintenanceRequest fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 8) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        // Files written before escalation checks were saved have no nextEscalation column
+        if (tokens.size() != 8 && tokens.size() != 9) {
             throw new IllegalArgumentException("Invalid CSV format: " + csvLine);
         }
-        return new MaintenanceRequest(
-                tokens[0],
-                Integer.parseInt(tokens[1]),
-                tokens[2],
-                tokens[3],
-                tokens[4],
-                Long.parseLong(tokens[5]),
-                tokens[6],
-                LocalDateTime.parse(tokens[7])
+        MaintenanceRequest request = new MaintenanceRequest(
+                tokens.getString(0),
+                tokens.getInt(1),
+                tokens.getString(2),
+                tokens.getString(3),
+                tokens.getString(4),
+                tokens.getLong(5),
+                tokens.getString(6),
+                tokens.getDateTime(7)
         );
+        if (tokens.size() == 9 && !tokens.isEmpty(8)) {
+            request.setNextEscalation(tokens.getDateTime(8));
+        }
+        return request;
     }
 }
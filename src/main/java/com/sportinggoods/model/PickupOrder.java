@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
@@ -69,24 +71,27 @@ public class PickupOrder {
     }
 
     public static PickupOrder fromCSV(String line, Inventory inventory) {
-        String[] parts = line.split(",");
-        if (parts.length < 6) throw new IllegalArgumentException("Invalid CSV format for PickupOrder.");
+        CsvTokenizer parts = CsvTokenizer.of(line);
+        if (parts.size() < 6) throw new IllegalArgumentException("Invalid CSV format for PickupOrder.");
 
-        int orderId = Integer.parseInt(parts[0]);
-        String confirmationDetails = parts[1];
-        String customerName = parts[2];
-        String[] itemsArray = parts[3].split("\\|");
+        int orderId = parts.getInt(0);
+        String confirmationDetails = parts.getString(1);
+        String customerName = parts.getString(2);
+        CsvTokenizer itemEntries = CsvTokenizer.of(parts.getString(3), '|'); // name:quantity entries
         Map<Item, Integer> items = new HashMap<>();
 
-        for (String itemEntry : itemsArray) {
-            String[] itemParts = itemEntry.split(":");
-            Item item = inventory != null ? inventory.getItem(itemParts[0]) : new Item(itemParts[0], 0.0, "Unknown", 0, -1);
-            if (item == null) throw new IllegalArgumentException("Item not found: " + itemParts[0]);
-            items.put(item, Integer.parseInt(itemParts[1]));
+        for (int i = 0; i < itemEntries.size(); i++) {
+            String itemEntry = itemEntries.getString(i);
+            int colon = itemEntry.lastIndexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Invalid item entry: " + itemEntry);
+            String itemName = itemEntry.substring(0, colon);
+            Item item = inventory != null ? inventory.getItem(itemName) : new Item(itemName, 0.0, "Unknown", 0, -1);
+            if (item == null) throw new IllegalArgumentException("Item not found: " + itemName);
+            items.put(item, Integer.parseInt(itemEntry.substring(colon + 1)));
         }
 
-        LocalDate orderDate = LocalDate.parse(parts[4]);
-        String status = parts[5];
+        LocalDate orderDate = parts.getDate(4);
+        String status = parts.getString(5);
 
         PickupOrder order = new PickupOrder(customerName, items, orderDate);
         order.setOrderId(orderId);
@@ -1,20 +1,24 @@
 package com.sportinggoods.model;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Receipt {
     private int receiptId;
     private Customer customer;
     private Cashier cashier;
-    private String receiptDetails; // Stores multiple items with quantities
+    private List<ReceiptLineItem> lineItems = new ArrayList<>(); // Stores multiple items with quantities
+    private String couponCode; // Null when no coupon was applied
+    private double couponDiscount;
     private double totalCost;
     private LocalDate date;
 
     // Constructor
-    public Receipt(Customer customer, Cashier cashier, String receiptDetails, double totalCost, LocalDate date) {
+    public Receipt(Customer customer, Cashier cashier, List<ReceiptLineItem> lineItems, double totalCost, LocalDate date) {
         this.customer = customer;
         this.cashier = cashier;
-        this.receiptDetails = receiptDetails;
+        this.lineItems = lineItems;
         this.totalCost = totalCost;
         this.date = date;
     }
@@ -39,8 +43,37 @@ public class Receipt {
         return cashier;
     }
 
+    public List<ReceiptLineItem> getLineItems() {
+        return lineItems;
+    }
+
+    public String getCouponCode() {
+        return couponCode;
+    }
+
+    public double getCouponDiscount() {
+        return couponDiscount;
+    }
+
+    public void setCoupon(String couponCode, double couponDiscount) {
+        this.couponCode = couponCode;
+        this.couponDiscount = couponDiscount;
+    }
+
+    // Human-readable item details, rendered from the line items for display only
     public String getReceiptDetails() {
-        return receiptDetails;
+        StringBuilder details = new StringBuilder();
+        for (ReceiptLineItem lineItem : lineItems) {
+            details.append(lineItem).append(", ");
+        }
+        if (couponCode != null) {
+            details.append("Coupon applied: ").append(couponCode).append(" (-$").append(couponDiscount).append("), ");
+        }
+        // Remove trailing comma and space
+        if (details.length() > 0) {
+            details.setLength(details.length() - 2);
+        }
+        return details.toString();
     }
 
     public double getTotalCost() {
@@ -51,14 +84,15 @@ public class Receipt {
         return date;
     }
 
-    // Convert Receipt information to CSV format
+    // Convert Receipt information to CSV format, with line items in their compact encoding
     public String toCSV() {
-        return receiptId + "," + customer.getCustomerId() + ",\"" + receiptDetails + "\"," + totalCost + "," + date;
+        return receiptId + "," + customer.getCustomerId() + "," + ReceiptLineItem.encodeAll(lineItems) + ","
+                + totalCost + "," + date + "," + (couponCode == null ? "" : couponCode) + "," + couponDiscount;
     }
 
     @Override
     public String toString() {
-        return "Receipt: " + receiptDetails + " for Customer: " + customer.getName() +
+        return "Receipt: " + getReceiptDetails() + " for Customer: " + customer.getName() +
                 " (ID: " + customer.getCustomerId() + "), Total: $" + totalCost + ", Date: " + date;
     }
 }
@@ -0,0 +1,134 @@
+package com.sportinggoods.model;
+
+import com.sportinggoods.util.CsvTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One item line on a receipt
+public class ReceiptLineItem {
+    private String itemName;
+    private int quantity;
+    private double unitPrice;
+    private double discount; // Total discount applied to this line
+
+    // Characters written as %XX in encoded item names
+    private static final String ESCAPED = "%;|,\"\r\n";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // Constructor
+    public ReceiptLineItem(String itemName, int quantity, double unitPrice, double discount) {
+        this.itemName = itemName;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+        this.discount = discount;
+    }
+
+    public ReceiptLineItem(String itemName, int quantity, double unitPrice) {
+        this(itemName, quantity, unitPrice, 0.0);
+    }
+
+    // Getters
+    public String getItemName() {
+        return itemName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getUnitPrice() {
+        return unitPrice;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    public double getLineTotal() {
+        return unitPrice * quantity - discount;
+    }
+
+    /**
+     * Encodes line items for the receipts file as name;quantity;unitPrice;discount entries
+     * separated by '|'. Characters in item names that would break the entries, the list or
+     * the CSV row (';', '|', ',', '"', line breaks, and '%' itself) are written as %XX, so
+     * the result is always a plain, unquoted CSV field.
+     */
+    public static String encodeAll(List<ReceiptLineItem> lineItems) {
+        StringBuilder encoded = new StringBuilder();
+        for (ReceiptLineItem lineItem : lineItems) {
+            if (encoded.length() > 0) {
+                encoded.append('|');
+            }
+            appendEscaped(encoded, lineItem.itemName);
+            encoded.append(';')
+                    .append(lineItem.quantity).append(';')
+                    .append(lineItem.unitPrice).append(';')
+                    .append(lineItem.discount);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes a field written by {@link #encodeAll(List)}. Malformed entries are skipped.
+     */
+    public static List<ReceiptLineItem> decodeAll(String encoded) {
+        List<ReceiptLineItem> lineItems = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return lineItems;
+        }
+        CsvTokenizer entries = CsvTokenizer.of(encoded, '|');
+        CsvTokenizer fields = new CsvTokenizer(';');
+        for (int i = 0; i < entries.size(); i++) {
+            fields.reset(entries.getString(i));
+            if (fields.size() != 4) {
+                continue; // Invalid format
+            }
+            try {
+                lineItems.add(new ReceiptLineItem(unescape(fields.getString(0)), fields.getInt(1),
+                        fields.getDouble(2), fields.getDouble(3)));
+            } catch (NumberFormatException e) {
+                // Skip invalid entries
+            }
+        }
+        return lineItems;
+    }
+
+    private static void appendEscaped(StringBuilder encoded, String itemName) {
+        for (int i = 0; i < itemName.length(); i++) {
+            char c = itemName.charAt(i);
+            if (ESCAPED.indexOf(c) >= 0) {
+                encoded.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                encoded.append(c);
+            }
+        }
+    }
+
+    // Reverses appendEscaped; a '%' not followed by two hex digits is kept as it is
+    private static String unescape(String itemName) {
+        if (itemName.indexOf('%') < 0) {
+            return itemName;
+        }
+        StringBuilder unescaped = new StringBuilder(itemName.length());
+        for (int i = 0; i < itemName.length(); i++) {
+            char c = itemName.charAt(i);
+            int high = i + 2 < itemName.length() ? Character.digit(itemName.charAt(i + 1), 16) : -1;
+            int low = high >= 0 ? Character.digit(itemName.charAt(i + 2), 16) : -1;
+            if (c == '%' && low >= 0) {
+                unescaped.append((char) (high << 4 | low));
+                i += 2;
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    @Override
+    public String toString() {
+        return itemName + ": " + quantity + " x $" + unitPrice + " each"
+                + (discount > 0 ? " (-$" + discount + ")" : "");
+    }
+}
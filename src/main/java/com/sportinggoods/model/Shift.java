@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Shift {
 
     private int date;
@@ -46,13 +48,13 @@ public class Shift {
     }
 
     public static Shift fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 3) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 3) {
             return null;  // Invalid format
         }
-        int date = Integer.parseInt(tokens[0]);
-        String startTime = tokens[1];
-        String startEnd = tokens[2];
+        int date = tokens.getInt(0);
+        String startTime = tokens.getString(1);
+        String startEnd = tokens.getString(2);
         return new Shift(date, startTime, startEnd);
     }
     
@@ -1,6 +1,7 @@
 package com.sportinggoods.model;
 
 import com.sportinggoods.model.Item;
+import com.sportinggoods.util.CsvTokenizer;
 
 import java.time.LocalDate;
 import java.util.HashMap;
@@ -155,16 +156,16 @@ public class ShippingOrder {
     public static ShippingOrder fromCSV(String csvLine) {
         try {
             // Split the line into tokens by "|"
-            String[] tokens = csvLine.split("\\|", -1);
+            CsvTokenizer tokens = CsvTokenizer.of(csvLine, '|');
 
             // Ensure we have exactly 11 tokens
-            if (tokens.length != 11) {
-                System.out.println("Error: Expected 11 tokens, got " + tokens.length);
+            if (tokens.size() != 11) {
+                System.out.println("Error: Expected 11 tokens, got " + tokens.size());
                 return null;
             }
 
             // Parse items using the updated parseItems method
-            Map<Item, Integer> items = parseItems(tokens[4]);
+            Map<Item, Integer> items = parseItems(tokens.getString(4));
             if (items == null || items.isEmpty()) {
                 System.out.println("Error: Items could not be parsed.");
                 return null;
@@ -173,7 +174,7 @@ public class ShippingOrder {
             // Parse totalPrice
             double totalPrice;
             try {
-                totalPrice = Double.parseDouble(tokens[5]);
+                totalPrice = tokens.getDouble(5);
             } catch (NumberFormatException e) {
                 System.out.println("Error parsing totalPrice: " + e.getMessage());
                 return null;
@@ -182,7 +183,7 @@ public class ShippingOrder {
             // Parse order date
             LocalDate orderDate;
             try {
-                orderDate = LocalDate.parse(tokens[9]);
+                orderDate = tokens.getDate(9);
             } catch (Exception e) {
                 System.out.println("Error parsing orderDate: " + e.getMessage());
                 return null;
@@ -190,17 +191,17 @@ public class ShippingOrder {
 
             // Construct and return the ShippingOrder object
             return new ShippingOrder(
-                    tokens[0],                // orderId
-                    Integer.parseInt(tokens[1]), // storeId
-                    tokens[2],                // customerFirstName
-                    tokens[3],                // customerLastName
+                    tokens.getString(0),      // orderId
+                    tokens.getInt(1),         // storeId
+                    tokens.getString(2),      // customerFirstName
+                    tokens.getString(3),      // customerLastName
                     items,                    // items
                     totalPrice,               // totalPrice
-                    tokens[6],                // shippingAddress
-                    tokens[7],                // customerEmail
-                    tokens[8],                // customerPhoneNumber
+                    tokens.getString(6),      // shippingAddress
+                    tokens.getString(7),      // customerEmail
+                    tokens.getString(8),      // customerPhoneNumber
                     orderDate,                // orderDate
-                    tokens[10]                // status
+                    tokens.getString(10)      // status
             );
 
         } catch (Exception e) {
@@ -220,21 +221,21 @@ public class ShippingOrder {
             if (entry.isEmpty()) continue; // Skip empty entries
 
             // Split each item entry into name, price, department, and quantity
-            String[] itemData = entry.split(",");
-            if (itemData.length != 4) {
+            CsvTokenizer itemData = CsvTokenizer.of(entry);
+            if (itemData.size() != 4) {
                 System.out.println("Error parsing item entry: " + entry);
                 continue;
             }
 
             // Parse item details
-            String name = itemData[0].trim();
+            String name = itemData.getString(0).trim();
             double price;
-            String department = itemData[2].trim();
+            String department = itemData.getString(2).trim();
             int quantity;
 
             try {
-                price = Double.parseDouble(itemData[1].trim());
-                quantity = Integer.parseInt(itemData[3].trim());
+                price = itemData.getDouble(1);
+                quantity = itemData.getInt(3);
             } catch (NumberFormatException e) {
                 System.out.println("Error parsing item details: " + e.getMessage());
                 continue;
@@ -1,5 +1,6 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
@@ -106,12 +107,12 @@ public class Store {
     }
 
     public static Store fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 2) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 2) {
             return null;  // Invalid format
         }
-        int id = Integer.parseInt(tokens[0]);
-        String address = tokens[1];
+        int id = tokens.getInt(0);
+        String address = tokens.getString(1);
       
         return new Store(id, address);
     }
@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class Supplier {
     private String supplierId;
     private String name;
@@ -75,10 +77,10 @@ public class Supplier {
 
     // Create Supplier from CSV
     public static Supplier fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 5) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 5) {
             return null;
         }
-        return new Supplier(tokens[0], tokens[1], tokens[2], tokens[3], tokens[4]);
+        return new Supplier(tokens.getString(0), tokens.getString(1), tokens.getString(2), tokens.getString(3), tokens.getString(4));
     }
 }
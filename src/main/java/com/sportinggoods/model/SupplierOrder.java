@@ -1,5 +1,6 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
 import java.time.LocalDate;
 
 public class SupplierOrder {
@@ -99,18 +100,18 @@ public class SupplierOrder {
 
     // Create SupplierOrder from CSV
     public static SupplierOrder fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 7) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 7) {
             return null;
         }
         return new SupplierOrder(
-            tokens[0],
-            tokens[1],
-            tokens[2],
-            Integer.parseInt(tokens[3]),
-            Double.parseDouble(tokens[4]),
-            LocalDate.parse(tokens[5]),
-            tokens[6]
+            tokens.getString(0),
+            tokens.getString(1),
+            tokens.getString(2),
+            tokens.getInt(3),
+            tokens.getDouble(4),
+            tokens.getDate(5),
+            tokens.getString(6)
         );
     }
 }
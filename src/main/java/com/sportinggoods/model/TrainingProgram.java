@@ -1,5 +1,7 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
+
 public class TrainingProgram {
     private int programId;
     private String title;
@@ -56,14 +58,14 @@ public class TrainingProgram {
 
     // CSV Deserialization
     public static TrainingProgram fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",", -1); // Allow empty fields
-        if (tokens.length < 4) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine); // Keeps empty fields
+        if (tokens.size() < 4) {
             return null; // Invalid format
         }
-        int programId = Integer.parseInt(tokens[0]);
-        String title = tokens[1];
-        String description = tokens[2];
-        int capacity = Integer.parseInt(tokens[3]);
+        int programId = tokens.getInt(0);
+        String title = tokens.getString(1);
+        String description = tokens.getString(2);
+        int capacity = tokens.getInt(3);
         return new TrainingProgram(programId, title, description, capacity);
     }
 }
@@ -1,5 +1,6 @@
 package com.sportinggoods.model;
 
+import com.sportinggoods.util.CsvTokenizer;
 import java.time.LocalDateTime;
 
 public class Utility {
@@ -100,13 +101,13 @@ public class Utility {
 
     // Create Utility from CSV
     public static Utility fromCSV(String csvLine) {
-        String[] tokens = csvLine.split(",");
-        if (tokens.length != 7) {
+        CsvTokenizer tokens = CsvTokenizer.of(csvLine);
+        if (tokens.size() != 7) {
             System.err.println("Invalid CSV format: " + csvLine);
             return null;
         }
         try {
-            return new Utility(tokens[0], Integer.parseInt(tokens[1]), tokens[2], tokens[3], Double.parseDouble(tokens[4]), LocalDateTime.parse(tokens[5]), tokens[6]);
+            return new Utility(tokens.getString(0), tokens.getInt(1), tokens.getString(2), tokens.getString(3), tokens.getDouble(4), tokens.getDateTime(5), tokens.getString(6));
         } catch (NumberFormatException e) {
             System.err.println("Error parsing CSV line: " + csvLine);
             return null;
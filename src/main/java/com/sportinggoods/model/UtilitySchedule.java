@@ -0,0 +1,189 @@
+package com.sportinggoods.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A utility's on/off schedule, parsed from the free-form schedule string. The utility is
+ * on during the listed windows and off the rest of the week.
+ *
+ * Accepted formats (windows separated by ';', days without commas so the CSV stays valid):
+ * - "24/7": always on
+ * - "09:00-21:00": every day
+ * - "Mon-Fri 07:00-22:00;Sat/Sun 09:00-18:00": on the given days
+ * - "22:00-06:00": windows ending before they start run past midnight
+ *
+ * The week is kept as one bit per minute, so finding whether the utility is on, or when
+ * it next switches, is a bit lookup or scan rather than a walk over the windows.
+ */
+public class UtilitySchedule {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    private final String text;
+    private final BitSet onMinutes; // Bit i set means on during minute i of the week, from Monday 00:00
+
+    private UtilitySchedule(String text, BitSet onMinutes) {
+        this.text = text;
+        this.onMinutes = onMinutes;
+    }
+
+    /**
+     * @return The parsed schedule, or null if the string is empty or not in a known format.
+     */
+    public static UtilitySchedule parse(String schedule) {
+        if (schedule == null || schedule.trim().isEmpty()) {
+            return null;
+        }
+        String text = schedule.trim();
+        BitSet onMinutes = new BitSet(MINUTES_PER_WEEK);
+        if (text.equalsIgnoreCase("24/7")) {
+            onMinutes.set(0, MINUTES_PER_WEEK);
+            return new UtilitySchedule(text, onMinutes);
+        }
+
+        for (String window : text.split(";")) {
+            String[] parts = window.trim().split("\\s+");
+            boolean[] days;
+            String hours;
+            if (parts.length == 1) {
+                days = parseDays("Daily");
+                hours = parts[0];
+            } else if (parts.length == 2) {
+                days = parseDays(parts[0]);
+                hours = parts[1];
+            } else {
+                return null;
+            }
+
+            String[] times = hours.split("-");
+            if (days == null || times.length != 2) {
+                return null;
+            }
+            int start = parseMinuteOfDay(times[0]);
+            int end = parseMinuteOfDay(times[1]);
+            if (start < 0 || end < 0 || start == MINUTES_PER_DAY) {
+                return null;
+            }
+            if (end <= start) {
+                end += MINUTES_PER_DAY; // Runs past midnight into the next day
+            }
+            for (int day = 0; day < 7; day++) {
+                if (days[day]) {
+                    setMinutes(onMinutes, day * MINUTES_PER_DAY + start, day * MINUTES_PER_DAY + end);
+                }
+            }
+        }
+        return new UtilitySchedule(text, onMinutes);
+    }
+
+    /**
+     * @return True if the utility should be on at the given time.
+     */
+    public boolean isOn(LocalDateTime time) {
+        return onMinutes.get(minuteOfWeek(time));
+    }
+
+    /**
+     * @return The first time after the given one at which the utility switches on or off,
+     *         or null if it never switches.
+     */
+    public LocalDateTime nextTransition(LocalDateTime after) {
+        int minute = minuteOfWeek(after);
+        boolean on = onMinutes.get(minute);
+        int next = on ? onMinutes.nextClearBit(minute + 1) : onMinutes.nextSetBit(minute + 1);
+        if (next < 0 || next >= MINUTES_PER_WEEK) {
+            // Nothing later this week; wrap around to the start of the week
+            next = on ? onMinutes.nextClearBit(0) : onMinutes.nextSetBit(0);
+            if (next < 0 || next >= minute) {
+                return null;
+            }
+            next += MINUTES_PER_WEEK;
+        }
+        return after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(next - minute);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static void setMinutes(BitSet onMinutes, int from, int to) {
+        if (to <= MINUTES_PER_WEEK) {
+            onMinutes.set(from, to);
+        } else {
+            // Sunday night windows run into Monday morning
+            onMinutes.set(from, MINUTES_PER_WEEK);
+            onMinutes.set(0, to - MINUTES_PER_WEEK);
+        }
+    }
+
+    private static int minuteOfWeek(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * MINUTES_PER_DAY + time.getHour() * 60 + time.getMinute();
+    }
+
+    // "H:mm" or "HH:mm"; 24:00 is allowed as the end of a day. Returns -1 if invalid.
+    private static int parseMinuteOfDay(String time) {
+        String[] parts = time.trim().split(":");
+        if (parts.length != 2 || parts[1].length() != 2) {
+            return -1;
+        }
+        try {
+            int hour = Integer.parseInt(parts[0]);
+            int minute = Integer.parseInt(parts[1]);
+            if (hour < 0 || minute < 0 || minute > 59 || hour > 24 || (hour == 24 && minute != 0)) {
+                return -1;
+            }
+            return hour * 60 + minute;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // "Daily", "Mon", "Mon-Fri" or "Sat/Sun"; returns null if invalid
+    private static boolean[] parseDays(String days) {
+        boolean[] selected = new boolean[7];
+        if (days.equalsIgnoreCase("Daily")) {
+            Arrays.fill(selected, true);
+            return selected;
+        }
+        for (String part : days.split("/")) {
+            String[] range = part.split("-");
+            if (range.length > 2) {
+                return null;
+            }
+            DayOfWeek first = parseDay(range[0]);
+            DayOfWeek last = range.length == 2 ? parseDay(range[1]) : first;
+            if (first == null || last == null) {
+                return null;
+            }
+            for (DayOfWeek day = first; ; day = day.plus(1)) {
+                selected[day.getValue() - 1] = true;
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static DayOfWeek parseDay(String day) {
+        String name = day.trim().toUpperCase();
+        if (name.length() < 3) {
+            return null;
+        }
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (dayOfWeek.name().startsWith(name)) {
+                return dayOfWeek;
+            }
+        }
+        return null;
+    }
+}
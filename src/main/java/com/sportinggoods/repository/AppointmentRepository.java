@@ -1,19 +1,44 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.Appointment;
+import com.sportinggoods.util.CsvTokenizer;
+import com.sportinggoods.util.FileUtils;
+import com.sportinggoods.util.WriteBehindFile;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
+/**
+ * Appointments are loaded from the file once and kept in memory, in file order. Bookings
+ * and status changes update them under the repository lock, and changed rows are merged
+ * into the file by a write-behind flusher rather than rewriting it for each change.
+ */
 public class AppointmentRepository {
     private static final String FILE_PATH = "data/appointments.csv";
     private static final String WAITLIST_FILE_PATH = "data/waitlist.csv";
+    private static final String WAITLIST_HEADER = "appointmentId,storeId,customerName,phoneNumber,itemName,issue,appointmentDate,appointmentTime,status,enqueuedAt";
+
+    // Every appointment by ID, shared so all kiosks see the same bookings
+    private static Map<String, Appointment> appointmentsById;
+    private static WriteBehindFile appointmentsFile;
+    // Booked slots of every store, shared so all kiosks book against the same bitmaps
+    private static AppointmentSlotIndex slotIndex;
+    // The waitlist, held in memory; changed entries are merged into the file in the background
+    private static AppointmentWaitlist waitlist;
+    private static WriteBehindFile waitlistFile;
 
     public AppointmentRepository() {
         initializeFiles();
+        loadAppointments();
+        loadWaitlist();
     }
 
     /**
@@ -43,72 +68,103 @@ public class AppointmentRepository {
      * @return True if the appointment is added successfully.
      */
     public boolean addAppointment(Appointment appointment) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            writer.write(appointment.toCSV());
-            writer.newLine();
+        synchronized (AppointmentRepository.class) {
+            Appointment stored = copy(appointment);
+            appointmentsById.put(stored.getAppointmentId(), stored);
+            markDirty(stored);
             return true;
-        } catch (IOException e) {
-            System.err.println("Error writing to appointments file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Books an appointment's time slot and adds the appointment. The slot is claimed
+     * atomically first, so two kiosks booking the same slot cannot both succeed.
+     *
+     * @param appointment The appointment to book.
+     * @return True if the slot was free and the appointment was added.
+     */
+    public boolean bookAppointment(Appointment appointment) {
+        LocalDate date = parseDate(appointment.getAppointmentDate());
+        int slot = AppointmentSlotIndex.slotOf(appointment.getAppointmentTime());
+        if (date == null || slot < 0) {
+            System.err.println("Invalid appointment date or time: " + appointment.getAppointmentDate()
+                    + " " + appointment.getAppointmentTime());
+            return false;
+        }
+        if (!slotIndex.tryBook(appointment.getStoreId(), date, slot)) {
+            return false; // Someone else has the slot
+        }
+        if (!addAppointment(appointment)) {
+            slotIndex.release(appointment.getStoreId(), date, slot);
             return false;
         }
+        return true;
+    }
+
+    /**
+     * @param storeId         The store ID.
+     * @param appointmentDate The date (yyyy-MM-dd).
+     * @return The booked times of the store's day, or an empty list for an invalid date.
+     */
+    public List<String> getBookedTimes(int storeId, String appointmentDate) {
+        LocalDate date = parseDate(appointmentDate);
+        return date == null ? new ArrayList<>() : slotIndex.getBookedTimes(storeId, date);
+    }
+
+    /**
+     * @param storeId         The store ID.
+     * @param appointmentDate The date (yyyy-MM-dd).
+     * @return The free times of the store's day, or an empty list for an invalid date.
+     */
+    public List<String> getFreeTimes(int storeId, String appointmentDate) {
+        LocalDate date = parseDate(appointmentDate);
+        return date == null ? new ArrayList<>() : slotIndex.getFreeTimes(storeId, date);
+    }
+
+    /**
+     * Finds the earliest free slot at any store that has appointments, or at the given store.
+     *
+     * @param storeId A store to include even if it has no appointments yet.
+     * @param from    Slots starting before this are skipped.
+     * @param maxDays Number of days to search.
+     * @return The earliest free slot, or null if none is free.
+     */
+    public AppointmentSlotIndex.FreeSlot findEarliestFreeSlot(int storeId, LocalDateTime from, int maxDays) {
+        List<Integer> storeIds = new ArrayList<>(slotIndex.getStoreIds());
+        storeIds.add(storeId);
+        return slotIndex.findEarliestFreeSlot(storeIds, from, maxDays);
     }
 
     /**
      * Removes a customer from the waitlist.
      *
-     * @param appointment The appointment to remove from the waitlist.
+     * @param appointment The waitlist entry to remove, as returned by {@link #getWaitlist()}.
      * @return True if the appointment was successfully removed, false otherwise.
      */
     public boolean removeFromWaitlist(Appointment appointment) {
-        List<Appointment> waitlist = getWaitlist();
-        boolean removed = waitlist.removeIf(a ->
-                a.getStoreId() == appointment.getStoreId() &&
-                        a.getCustomerName().equals(appointment.getCustomerName()) &&
-                        a.getPhoneNumber().equals(appointment.getPhoneNumber()) &&
-                        a.getItemName().equals(appointment.getItemName()) &&
-                        a.getIssue().equals(appointment.getIssue())
-        );
-
-        if (removed) {
-            // Save updated waitlist to file
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(WAITLIST_FILE_PATH))) {
-                writer.write("appointmentId,storeId,customerName,phoneNumber,itemName,issue,status");
-                writer.newLine();
-                for (Appointment a : waitlist) {
-                    writer.write(a.toCSV());
-                    writer.newLine();
-                }
-                return true;
-            } catch (IOException e) {
-                System.err.println("Error saving updated waitlist: " + e.getMessage());
+        synchronized (AppointmentRepository.class) {
+            if (waitlist.remove(appointment.getAppointmentId()) == null) {
                 return false;
             }
+            waitlistFile.remove(appointment.getAppointmentId());
+            return true;
         }
-
-        return false;
     }
 
 
     /**
      * Retrieves all appointments.
      *
-     * @return A list of all appointments.
+     * @return Copies of all appointments, in the order they were added.
      */
     public List<Appointment> getAllAppointments() {
-        List<Appointment> appointments = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                Appointment appointment = Appointment.fromCSV(line);
-                if (appointment != null) {
-                    appointments.add(appointment);
-                }
+        synchronized (AppointmentRepository.class) {
+            List<Appointment> appointments = new ArrayList<>(appointmentsById.size());
+            for (Appointment appointment : appointmentsById.values()) {
+                appointments.add(copy(appointment));
             }
-        } catch (IOException e) {
-            System.err.println("Error reading appointments file: " + e.getMessage());
+            return appointments;
         }
-        return appointments;
     }
 
     /**
@@ -131,115 +187,265 @@ public class AppointmentRepository {
      * @return True if the update is successful.
      */
     public boolean updateAppointmentStatus(String appointmentId, String newStatus) {
-        List<Appointment> appointments = getAllAppointments();
-        boolean updated = false;
+        synchronized (AppointmentRepository.class) {
+            return updateStatus(appointmentId, newStatus);
+        }
+    }
 
-        for (Appointment appointment : appointments) {
-            if (appointment.getAppointmentId().equals(appointmentId)) {
-                appointment.setStatus(newStatus);
-                updated = true;
-                break;
-            }
+    private boolean updateStatus(String appointmentId, String newStatus) {
+        Appointment updated = appointmentsById.get(appointmentId);
+        if (updated == null) {
+            return false;
         }
 
-        if (updated) {
-            saveAppointmentsToFile(appointments);
+        // Canceling frees the slot; reinstating a canceled appointment needs it back
+        String oldStatus = updated.getStatus();
+        boolean heldSlot = holdsSlot(updated);
+        updated.setStatus(newStatus);
+        boolean holdsSlot = holdsSlot(updated);
+        LocalDate date = parseDate(updated.getAppointmentDate());
+        int slot = AppointmentSlotIndex.slotOf(updated.getAppointmentTime());
+        if (date != null && slot >= 0 && holdsSlot && !heldSlot
+                && !slotIndex.tryBook(updated.getStoreId(), date, slot)) {
+            updated.setStatus(oldStatus);
+            System.err.println("The appointment's time slot has been booked by someone else.");
+            return false;
         }
 
-        return updated;
+        markDirty(updated);
+        if (date != null && slot >= 0 && heldSlot && !holdsSlot) {
+            promoteFromWaitlist(updated, date, slot);
+        }
+        return true;
     }
 
-    public boolean updateAppointments(List<Appointment> updatedAppointments) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            // Write the header line
-            writer.write("appointmentId,storeId,customerName,phoneNumber,itemName,issue,appointmentDate,appointmentTime,status");
-            writer.newLine();
-
-            // Write each appointment to the file
-            for (Appointment appointment : updatedAppointments) {
-                writer.write(appointment.toCSV());
-                writer.newLine();
-            }
+    /**
+     * Hands a canceled appointment's slot to the next customer on the waitlist for that
+     * store and date. The slot stays booked throughout, so no one else can take it in
+     * between; it is only freed if nobody is waiting.
+     */
+    private void promoteFromWaitlist(Appointment canceled, LocalDate date, int slot) {
+        Appointment next = waitlist.peek(canceled.getStoreId(), canceled.getAppointmentDate());
+        if (next == null) {
+            slotIndex.release(canceled.getStoreId(), date, slot);
+            return;
+        }
 
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error updating appointments: " + e.getMessage());
-            return false;
+        Appointment promoted = new Appointment(next.getAppointmentId(), next.getStoreId(), next.getCustomerName(),
+                next.getPhoneNumber(), next.getItemName(), next.getIssue(), canceled.getAppointmentDate(),
+                canceled.getAppointmentTime(), "Scheduled");
+        if (!addAppointment(promoted)) {
+            slotIndex.release(canceled.getStoreId(), date, slot);
+            return;
         }
+        waitlist.remove(next.getAppointmentId());
+        waitlistFile.remove(next.getAppointmentId());
+        System.out.println("Scheduled " + next.getCustomerName() + " from the waitlist for "
+                + canceled.getAppointmentDate() + " at " + canceled.getAppointmentTime() + ".");
     }
 
-
     /**
-     * Saves all appointments back to the file.
+     * Replaces every appointment with the given ones.
      *
-     * @param appointments The list of appointments to save.
-     */
-    private void saveAppointmentsToFile(List<Appointment> appointments) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            writer.write("appointmentId,storeId,customerName,customerPhone,itemName,issue,appointmentDate,appointmentTime,status\n");
-            for (Appointment appointment : appointments) {
-                writer.write(appointment.toCSV());
-                writer.newLine();
+     * @return True once the change is queued for the file.
+     */
+    public boolean updateAppointments(List<Appointment> updatedAppointments) {
+        synchronized (AppointmentRepository.class) {
+            Map<String, String> rows = new LinkedHashMap<>();
+            for (String appointmentId : appointmentsById.keySet()) {
+                rows.put(appointmentId, null); // Dropped unless it is in the new list
             }
-        } catch (IOException e) {
-            System.err.println("Error saving appointments to file: " + e.getMessage());
+            appointmentsById.clear();
+            for (Appointment appointment : updatedAppointments) {
+                Appointment stored = copy(appointment);
+                appointmentsById.put(stored.getAppointmentId(), stored);
+                rows.put(stored.getAppointmentId(), stored.toCSV());
+            }
+            appointmentsFile.putAll(rows);
+            rebuildSlotIndex(appointmentsById.values());
+            return true;
         }
     }
 
     /**
-     * Adds a customer to the waitlist.
+     * Adds a customer to the waitlist for any date.
      *
      * @return True if added successfully.
      */
     public boolean addToWaitlist(int storeId, String customerName, String phoneNumber, String itemName, String issue) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(WAITLIST_FILE_PATH, true))) {
-            writer.write(storeId + "," + customerName + "," + phoneNumber + "," + itemName + "," + issue);
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error saving to waitlist: " + e.getMessage());
-            return false;
+        return addToWaitlist(storeId, customerName, phoneNumber, itemName, issue, "", "");
+    }
+
+    /**
+     * Adds a customer to the waitlist for a date. When an appointment on that date is
+     * canceled, the customer who has waited longest gets the freed slot.
+     *
+     * @param appointmentDate The requested date (yyyy-MM-dd), or empty for any date.
+     * @param appointmentTime The requested time, kept for reference.
+     * @return True if added successfully.
+     */
+    public boolean addToWaitlist(int storeId, String customerName, String phoneNumber, String itemName, String issue,
+                                 String appointmentDate, String appointmentTime) {
+        Appointment entry = new Appointment(UUID.randomUUID().toString(), storeId, customerName, phoneNumber,
+                itemName, issue, appointmentDate, appointmentTime, "Waitlisted");
+        LocalDateTime enqueuedAt = LocalDateTime.now();
+        synchronized (AppointmentRepository.class) {
+            waitlist.add(entry, enqueuedAt);
+            waitlistFile.put(entry.getAppointmentId(), waitlistRow(entry, enqueuedAt));
         }
+        return true;
     }
 
     /**
      * Retrieves the waitlist.
      *
-     * @return A list of all waitlist entries.
+     * @return A list of all waitlist entries, longest waiting first.
      */
     public List<Appointment> getWaitlist() {
-        List<Appointment> waitlist = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(WAITLIST_FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                Appointment appointment = Appointment.fromCSV(line);
-                if (appointment != null) {
-                    waitlist.add(appointment);
+        synchronized (AppointmentRepository.class) {
+            return waitlist.getAll();
+        }
+    }
+
+    public List<Appointment> getWaitlistByStoreId(int storeId) {
+        synchronized (AppointmentRepository.class) {
+            return waitlist.getByStore(storeId);
+        }
+    }
+
+    /**
+     * Writes pending appointment and waitlist changes to the files. Called at shutdown.
+     */
+    public static void flush() {
+        WriteBehindFile appointments;
+        WriteBehindFile waitlisted;
+        synchronized (AppointmentRepository.class) {
+            appointments = appointmentsFile;
+            waitlisted = waitlistFile;
+        }
+        if (appointments != null) {
+            appointments.flush();
+        }
+        if (waitlisted != null) {
+            waitlisted.flush();
+        }
+    }
+
+    // ==========================
+    // Waitlist
+    // ==========================
+
+    // Loads the waitlist on first use; later repositories share it
+    private static void loadWaitlist() {
+        synchronized (AppointmentRepository.class) {
+            if (waitlist != null) {
+                return;
+            }
+            waitlist = new AppointmentWaitlist();
+            List<String> rows = new ArrayList<>();
+            boolean[] converted = {false};
+            FileUtils.initializeFile(WAITLIST_FILE_PATH, WAITLIST_HEADER);
+            FileUtils.forEachLine(WAITLIST_FILE_PATH, line -> {
+                CsvTokenizer tokens = CsvTokenizer.of(line);
+                try {
+                    Appointment entry;
+                    LocalDateTime enqueuedAt = LocalDateTime.MIN; // Unknown: ahead of every timed entry
+                    if (tokens.size() == 5) {
+                        // Older rows: storeId,customerName,phoneNumber,itemName,issue
+                        entry = new Appointment(UUID.randomUUID().toString(), tokens.getInt(0), tokens.getString(1),
+                                tokens.getString(2), tokens.getString(3), tokens.getString(4), "", "", "Waitlisted");
+                        converted[0] = true;
+                    } else if (tokens.size() >= 9) {
+                        if (tokens.size() > 9 && !tokens.isEmpty(9)) {
+                            enqueuedAt = tokens.getDateTime(9);
+                        }
+                        entry = Appointment.fromCSV(line);
+                    } else {
+                        return true; // Skip invalid lines
+                    }
+                    waitlist.add(entry, enqueuedAt);
+                    rows.add(waitlistRow(entry, enqueuedAt));
+                } catch (RuntimeException e) {
+                    // Skip invalid lines
                 }
+                return true;
+            });
+            if (converted[0]) {
+                // Older rows have no ID to key them by, so write the file out in the current format once
+                rows.add(0, WAITLIST_HEADER);
+                FileUtils.writeAllLines(WAITLIST_FILE_PATH, rows);
             }
-        } catch (IOException e) {
-            System.err.println("Error reading waitlist file: " + e.getMessage());
+            waitlistFile = new WriteBehindFile(WAITLIST_FILE_PATH, WAITLIST_HEADER, line -> {
+                int comma = line.indexOf(',');
+                return comma <= 0 ? null : line.substring(0, comma); // appointmentId
+            });
         }
-        return waitlist;
     }
 
-    public List<Appointment> getWaitlistByStoreId(int storeId) {
-        List<Appointment> waitlist = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(WAITLIST_FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
+    private static String waitlistRow(Appointment entry, LocalDateTime enqueuedAt) {
+        return entry.toCSV() + "," + (enqueuedAt.equals(LocalDateTime.MIN) ? "" : enqueuedAt.toString());
+    }
+
+    // ==========================
+    // Appointments and Slot Index
+    // ==========================
+
+    // Loads the appointments and their booked slots on first use; later repositories share them
+    private static void loadAppointments() {
+        synchronized (AppointmentRepository.class) {
+            if (appointmentsById != null) {
+                return;
+            }
+            appointmentsById = new LinkedHashMap<>();
+            FileUtils.forEachLine(FILE_PATH, line -> {
                 Appointment appointment = Appointment.fromCSV(line);
-                if (appointment != null && appointment.getStoreId() == storeId) {
-                    waitlist.add(appointment);
+                if (appointment != null) {
+                    appointmentsById.put(appointment.getAppointmentId(), appointment);
                 }
+                return true;
+            });
+            appointmentsFile = new WriteBehindFile(FILE_PATH, FILE_HEADER, line -> {
+                int comma = line.indexOf(',');
+                return comma <= 0 ? null : line.substring(0, comma); // appointmentId
+            });
+            slotIndex = new AppointmentSlotIndex();
+            rebuildSlotIndex(appointmentsById.values());
+        }
+    }
+
+    private static void markDirty(Appointment appointment) {
+        appointmentsFile.put(appointment.getAppointmentId(), appointment.toCSV());
+    }
+
+    // A separate object, so callers never change the stored appointment
+    private static Appointment copy(Appointment appointment) {
+        return new Appointment(appointment.getAppointmentId(), appointment.getStoreId(), appointment.getCustomerName(),
+                appointment.getPhoneNumber(), appointment.getItemName(), appointment.getIssue(),
+                appointment.getAppointmentDate(), appointment.getAppointmentTime(), appointment.getStatus());
+    }
+
+    private static void rebuildSlotIndex(Iterable<Appointment> appointments) {
+        slotIndex.clear();
+        for (Appointment appointment : appointments) {
+            LocalDate date = parseDate(appointment.getAppointmentDate());
+            int slot = AppointmentSlotIndex.slotOf(appointment.getAppointmentTime());
+            if (date != null && slot >= 0 && holdsSlot(appointment)) {
+                slotIndex.tryBook(appointment.getStoreId(), date, slot);
             }
-        } catch (IOException e) {
-            System.err.println("Error reading waitlist: " + e.getMessage());
         }
-        return waitlist;
     }
 
+    // Every appointment keeps its slot unless it was canceled
+    private static boolean holdsSlot(Appointment appointment) {
+        String status = appointment.getStatus();
+        return status == null || !(status.trim().equalsIgnoreCase("Canceled") || status.trim().equalsIgnoreCase("Cancelled"));
+    }
 
+    private static LocalDate parseDate(String date) {
+        try {
+            return date == null ? null : LocalDate.parse(date.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package com.sportinggoods.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Booked appointment slots per store and day, kept as a bitmap with one bit per
+ * half-hour slot. Free-slot queries are a few bit operations, and a slot is booked with
+ * a compare-and-set on its day's bitmap, so two kiosks can never book the same slot.
+ */
+public class AppointmentSlotIndex {
+    /**
+     * The bookable times of a day, 9 AM to 5 PM every 30 minutes.
+     */
+    public static final List<String> SLOT_TIMES;
+    private static final int FIRST_SLOT_MINUTE = 9 * 60;
+    private static final int SLOT_MINUTES = 30;
+
+    static {
+        List<String> times = new ArrayList<>();
+        for (int hour = 9; hour < 17; hour++) {
+            times.add(String.format("%02d:00", hour));
+            times.add(String.format("%02d:30", hour));
+        }
+        SLOT_TIMES = Collections.unmodifiableList(times);
+    }
+
+    private static final long ALL_SLOTS = (1L << SLOT_TIMES.size()) - 1;
+
+    // One bitmap per (storeId, day); bit i set means SLOT_TIMES.get(i) is booked
+    private final ConcurrentHashMap<Long, AtomicLong> bookedSlots = new ConcurrentHashMap<>();
+    private final Set<Integer> storeIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A free slot found by {@link #findEarliestFreeSlot}.
+     */
+    public static class FreeSlot {
+        private final int storeId;
+        private final LocalDate date;
+        private final String time;
+
+        public FreeSlot(int storeId, LocalDate date, String time) {
+            this.storeId = storeId;
+            this.date = date;
+            this.time = time;
+        }
+
+        public int getStoreId() { return storeId; }
+        public LocalDate getDate() { return date; }
+        public String getTime() { return time; }
+
+        @Override
+        public String toString() {
+            return "Store " + storeId + " on " + date + " at " + time;
+        }
+    }
+
+    /**
+     * @param time A time such as "09:30".
+     * @return The slot number of the time, or -1 if it is not a bookable time.
+     */
+    public static int slotOf(String time) {
+        return time == null ? -1 : SLOT_TIMES.indexOf(time.trim());
+    }
+
+    /**
+     * Books a slot if it is free.
+     *
+     * @return True if this call booked the slot, false if it was already booked.
+     */
+    public boolean tryBook(int storeId, LocalDate date, int slot) {
+        AtomicLong day = bookedSlots.computeIfAbsent(key(storeId, date), k -> new AtomicLong());
+        storeIds.add(storeId);
+        long bit = 1L << slot;
+        while (true) {
+            long booked = day.get();
+            if ((booked & bit) != 0) {
+                return false;
+            }
+            if (day.compareAndSet(booked, booked | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Frees a booked slot, e.g. when an appointment is canceled.
+     */
+    public void release(int storeId, LocalDate date, int slot) {
+        AtomicLong day = bookedSlots.get(key(storeId, date));
+        if (day != null) {
+            day.getAndUpdate(booked -> booked & ~(1L << slot));
+        }
+    }
+
+    public boolean isBooked(int storeId, LocalDate date, int slot) {
+        return (booked(storeId, date) & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return The booked times of a store's day, earliest first.
+     */
+    public List<String> getBookedTimes(int storeId, LocalDate date) {
+        return times(booked(storeId, date));
+    }
+
+    /**
+     * @return The free times of a store's day, earliest first.
+     */
+    public List<String> getFreeTimes(int storeId, LocalDate date) {
+        return times(~booked(storeId, date) & ALL_SLOTS);
+    }
+
+    /**
+     * Finds the earliest free slot at any of the stores, starting from a point in time.
+     * On the same day and time the store with the lowest ID is chosen.
+     *
+     * @param storeIds The stores to search.
+     * @param from     Slots starting before this are skipped.
+     * @param maxDays  Number of days to search, including the first one.
+     * @return The earliest free slot, or null if every slot is booked.
+     */
+    public FreeSlot findEarliestFreeSlot(Collection<Integer> storeIds, LocalDateTime from, int maxDays) {
+        // Slots of the first day that start before the given time are not offered
+        int minutes = from.getHour() * 60 + from.getMinute() + (from.getSecond() > 0 || from.getNano() > 0 ? 1 : 0);
+        int pastSlots = Math.max(0, Math.min(SLOT_TIMES.size(), (minutes - FIRST_SLOT_MINUTE + SLOT_MINUTES - 1) / SLOT_MINUTES));
+        long past = (1L << pastSlots) - 1;
+
+        Set<Integer> stores = new TreeSet<>(storeIds);
+        LocalDate date = from.toLocalDate();
+        for (int dayOffset = 0; dayOffset < maxDays; dayOffset++, date = date.plusDays(1)) {
+            int bestStore = -1;
+            int bestSlot = SLOT_TIMES.size();
+            for (int storeId : stores) {
+                long free = ~(booked(storeId, date) | (dayOffset == 0 ? past : 0)) & ALL_SLOTS;
+                int slot = Long.numberOfTrailingZeros(free); // 64 when nothing is free
+                if (slot < bestSlot) {
+                    bestSlot = slot;
+                    bestStore = storeId;
+                }
+            }
+            if (bestStore >= 0) {
+                return new FreeSlot(bestStore, date, SLOT_TIMES.get(bestSlot));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The stores that have had a slot booked.
+     */
+    public Set<Integer> getStoreIds() {
+        return new TreeSet<>(storeIds);
+    }
+
+    public void clear() {
+        bookedSlots.clear();
+        storeIds.clear();
+    }
+
+    private long booked(int storeId, LocalDate date) {
+        AtomicLong day = bookedSlots.get(key(storeId, date));
+        return day == null ? 0 : day.get();
+    }
+
+    private static List<String> times(long slots) {
+        List<String> times = new ArrayList<>();
+        for (long bits = slots; bits != 0; bits &= bits - 1) {
+            times.add(SLOT_TIMES.get(Long.numberOfTrailingZeros(bits)));
+        }
+        return times;
+    }
+
+    private static long key(int storeId, LocalDate date) {
+        return ((long) storeId << 32) | (date.toEpochDay() & 0xFFFFFFFFL);
+    }
+}
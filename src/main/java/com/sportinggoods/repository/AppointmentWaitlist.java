@@ -0,0 +1,131 @@
+package com.sportinggoods.repository;
+
+import com.sportinggoods.model.Appointment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Waitlisted customers, queued per store and requested date in the order they joined.
+ * Entries are indexed by ID, so removing one or taking the head of a queue never scans
+ * the other entries. Customers who did not ask for a particular date wait in their
+ * store's undated queue, which is used when a date's own queue is empty.
+ *
+ * Not thread-safe; AppointmentRepository guards it.
+ */
+public class AppointmentWaitlist {
+    private static final Comparator<Entry> QUEUE_ORDER = Comparator
+            .comparing((Entry entry) -> entry.enqueuedAt)
+            .thenComparingLong(entry -> entry.sequence);
+
+    private final Map<String, Entry> entriesById = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> queues = new HashMap<>();
+    private long nextSequence;
+
+    private static class Entry {
+        private final Appointment appointment;
+        private final LocalDateTime enqueuedAt;
+        private final long sequence; // Keeps entries with the same time in the order they were added
+
+        private Entry(Appointment appointment, LocalDateTime enqueuedAt, long sequence) {
+            this.appointment = appointment;
+            this.enqueuedAt = enqueuedAt;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Queues a waitlist entry. An entry with the same ID replaces the old one.
+     *
+     * @param appointment The entry; its date is the requested date, or empty for any date.
+     * @param enqueuedAt  When the customer joined the waitlist.
+     */
+    public void add(Appointment appointment, LocalDateTime enqueuedAt) {
+        remove(appointment.getAppointmentId());
+        Entry entry = new Entry(appointment, enqueuedAt, nextSequence++);
+        entriesById.put(appointment.getAppointmentId(), entry);
+        queues.computeIfAbsent(queueKey(appointment.getStoreId(), appointment.getAppointmentDate()),
+                key -> new TreeSet<>(QUEUE_ORDER)).add(entry);
+    }
+
+    /**
+     * @return The removed entry, or null if there was none with the ID.
+     */
+    public Appointment remove(String appointmentId) {
+        Entry entry = entriesById.remove(appointmentId);
+        if (entry == null) {
+            return null;
+        }
+        String key = queueKey(entry.appointment.getStoreId(), entry.appointment.getAppointmentDate());
+        TreeSet<Entry> queue = queues.get(key);
+        queue.remove(entry);
+        if (queue.isEmpty()) {
+            queues.remove(key);
+        }
+        return entry.appointment;
+    }
+
+    /**
+     * @return The next customer for a freed slot of the store's date: the head of the
+     *         date's queue, else the head of the store's undated queue, else null.
+     */
+    public Appointment peek(int storeId, String date) {
+        TreeSet<Entry> queue = queues.get(queueKey(storeId, date));
+        if (queue == null) {
+            queue = queues.get(queueKey(storeId, ""));
+        }
+        return queue == null ? null : queue.first().appointment;
+    }
+
+    public Appointment get(String appointmentId) {
+        Entry entry = entriesById.get(appointmentId);
+        return entry == null ? null : entry.appointment;
+    }
+
+    public LocalDateTime getEnqueuedAt(String appointmentId) {
+        Entry entry = entriesById.get(appointmentId);
+        return entry == null ? null : entry.enqueuedAt;
+    }
+
+    /**
+     * @return Every entry of the store, in the order they joined.
+     */
+    public List<Appointment> getByStore(int storeId) {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : entriesById.values()) {
+            if (entry.appointment.getStoreId() == storeId) {
+                entries.add(entry);
+            }
+        }
+        return appointments(entries);
+    }
+
+    /**
+     * @return Every entry, in the order they joined.
+     */
+    public List<Appointment> getAll() {
+        return appointments(new ArrayList<>(entriesById.values()));
+    }
+
+    public int size() {
+        return entriesById.size();
+    }
+
+    private static List<Appointment> appointments(List<Entry> entries) {
+        entries.sort(QUEUE_ORDER);
+        List<Appointment> appointments = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            appointments.add(entry.appointment);
+        }
+        return appointments;
+    }
+
+    private static String queueKey(int storeId, String date) {
+        return storeId + "|" + (date == null ? "" : date.trim());
+    }
+}
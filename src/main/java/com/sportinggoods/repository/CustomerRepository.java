@@ -1,31 +1,166 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.Customer;
+import com.sportinggoods.util.CsvTokenizer;
 import com.sportinggoods.util.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Customers are loaded from the file once and kept in memory, indexed by ID and by name.
+ * New customers are appended to the file and added to the indexes, so lookups never
+ * reread the file.
+ *
+ * To hold millions of loyalty customers the table stores only an int ID and a name per
+ * customer, in parallel arrays, with open-addressing int indexes over them; Customer
+ * objects are created only when returned.
+ */
 public class CustomerRepository {
     private final String filePath = "data/customers.csv";
 
+    private int size;
+    private int[] ids = new int[16];
+    private String[] names = new String[16];
+    // Open-addressing hash tables holding entry index + 1, 0 for an empty slot
+    private int[] idSlots = new int[32];
+    private int[] nameSlots = new int[32];
+
     public CustomerRepository() {
         FileUtils.initializeFile(filePath, "customerId,name");
+        loadCustomers();
+    }
+
+    public synchronized boolean addCustomer(Customer customer) {
+        if (!FileUtils.appendToFile(filePath, customer.toCSV())) {
+            return false;
+        }
+        addEntry(customer.getCustomerId(), customer.getName());
+        return true;
+    }
+
+    /**
+     * @return The customer with the ID, the first one added if the ID was used more than once,
+     *         or null if there is none.
+     */
+    public synchronized Customer getCustomerById(int customerId) {
+        int slot = findIdSlot(customerId);
+        if (idSlots[slot] == 0) {
+            return null;
+        }
+        int entry = idSlots[slot] - 1;
+        return new Customer(names[entry], ids[entry]);
+    }
+
+    /**
+     * Finds customers by name, ignoring case, e.g. for lookups at the counter.
+     *
+     * @param name The full name to look for.
+     * @return The matching customers in the order they were added.
+     */
+    public synchronized List<Customer> getCustomersByName(String name) {
+        List<Customer> customers = new ArrayList<>();
+        if (name == null) {
+            return customers;
+        }
+        List<Integer> entries = new ArrayList<>();
+        int mask = nameSlots.length - 1;
+        for (int slot = nameHash(name) & mask; nameSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = nameSlots[slot] - 1;
+            if (names[entry].equalsIgnoreCase(name)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(null); // Probing can wrap around the table, so restore insertion order
+        for (int entry : entries) {
+            customers.add(new Customer(names[entry], ids[entry]));
+        }
+        return customers;
     }
 
-    public boolean addCustomer(Customer customer) {
-        return FileUtils.appendToFile(filePath, customer.toCSV());
+    public synchronized int getCustomerCount() {
+        return size;
     }
 
-    public Customer getCustomerById(int customerId) {
-        List<String> lines = FileUtils.readAllLines(filePath);
-        for (String line : lines) {
-            Customer customer = Customer.fromCSV(line);
-            if (customer != null && customer.getCustomerId() == customerId) {
-                return customer;
+    // ==========================
+    // Table
+    // ==========================
+
+    private void loadCustomers() {
+        CsvTokenizer parts = new CsvTokenizer();
+        FileUtils.forEachLine(filePath, line -> {
+            parts.reset(line);
+            if (parts.size() == 2) { // Same rule as Customer.fromCSV
+                try {
+                    addEntry(parts.getInt(0), parts.getString(1));
+                } catch (NumberFormatException e) {
+                    // Skip invalid lines
+                }
             }
+            return true;
+        });
+    }
+
+    private void addEntry(int customerId, String name) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            names = Arrays.copyOf(names, size * 2);
         }
-        return null;
+        ids[size] = customerId;
+        names[size] = name;
+        size++;
+
+        // Keep both tables at most half full
+        if (size * 2 > idSlots.length) {
+            rehash(idSlots.length * 2);
+        } else {
+            indexEntry(size - 1);
+        }
+    }
+
+    private void indexEntry(int entry) {
+        int idSlot = findIdSlot(ids[entry]);
+        if (idSlots[idSlot] == 0) {
+            idSlots[idSlot] = entry + 1; // The first customer with an ID wins
+        }
+        int mask = nameSlots.length - 1;
+        int nameSlot = nameHash(names[entry]) & mask;
+        while (nameSlots[nameSlot] != 0) {
+            nameSlot = (nameSlot + 1) & mask;
+        }
+        nameSlots[nameSlot] = entry + 1;
+    }
+
+    private void rehash(int capacity) {
+        idSlots = new int[capacity];
+        nameSlots = new int[capacity];
+        for (int entry = 0; entry < size; entry++) {
+            indexEntry(entry);
+        }
+    }
+
+    // Returns the slot holding the ID, or the empty slot where it would go
+    private int findIdSlot(int customerId) {
+        int mask = idSlots.length - 1;
+        int slot = mix(customerId) & mask;
+        while (idSlots[slot] != 0 && ids[idSlots[slot] - 1] != customerId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
     }
 
+    // Case-insensitive hash computed without building a lower-case copy of the name
+    private static int nameHash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
 }
@@ -1,18 +1,29 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.Discount;
+import com.sportinggoods.model.Item;
+import com.sportinggoods.util.CsvTokenizer;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DiscountRepository {
     private List<Discount> discounts = new ArrayList<>();
     private Map<String, Double> originalPrices = new HashMap<>();
     private static final String DISCOUNTS_FILE_PATH = "data/discounts.csv";
     private static final String ORIGINAL_PRICES_FILE_PATH = "data/original_prices.csv";
+    private static final String STORE_WIDE = "store-wide";
+
+    // Discounts grouped by lower-cased target, rebuilt whenever the discount list changes
+    private volatile Map<String, TargetRules> rulesByTarget = new HashMap<>();
+    private volatile int rulesVersion;
+    // Effective price per (item, store), reused until the discounts or the item's price change
+    private final Map<String, EffectivePrice> effectivePrices = new ConcurrentHashMap<>();
 
     public DiscountRepository() {
         loadDiscountsFromFile();
         loadOriginalPricesFromFile();
+        compileRules();
     }
 
     public List<Discount> getDiscounts() {
@@ -43,6 +54,7 @@ public class DiscountRepository {
         }
     
         discounts.add(discount);
+        compileRules();
         saveDiscountsToFile();
         saveOriginalPricesToFile();
     }
@@ -50,6 +62,7 @@ public class DiscountRepository {
     public boolean removeDiscount(String target) {
         boolean removed = discounts.removeIf(d -> d.getTarget().equalsIgnoreCase(target));
         if (removed) {
+            compileRules();
             originalPrices.remove(target); // Remove associated original price
             saveDiscountsToFile();
             saveOriginalPricesToFile();
@@ -67,19 +80,149 @@ public class DiscountRepository {
     }
 
     public double getStoreWideDiscount() {
-        return discounts.stream()
-                .filter(d -> d.getTarget().equalsIgnoreCase("Store-Wide"))
-                .mapToDouble(Discount::getValue)
-                .findFirst() // Apply only the first store-wide discount
-                .orElse(0);
+        TargetRules rules = rulesByTarget.get(STORE_WIDE);
+        return rules == null ? 0 : rules.first.getValue(); // Apply only the first store-wide discount
     }
 
     public double getDepartmentDiscount(String department) {
-        return discounts.stream()
-                .filter(d -> d.getTarget().equalsIgnoreCase(department))
-                .mapToDouble(Discount::getValue)
-                .max()
-                .orElse(0);
+        TargetRules rules = rulesByTarget.get(department.toLowerCase());
+        return rules == null ? 0 : rules.maxValue;
+    }
+
+    /**
+     * Returns the price of an item after the best item, department or store-wide discount.
+     * Results are cached per item and store, and recomputed only when the discounts
+     * change or the item's price or department no longer match the cached entry.
+     *
+     * @param item The item to price.
+     * @return The discounted price, never below 0.
+     */
+    public double getEffectivePrice(Item item) {
+        String key = item.getName().toLowerCase() + ":" + item.getStoreID();
+        int version = rulesVersion;
+        EffectivePrice cached = effectivePrices.get(key);
+        if (cached != null && cached.isValidFor(item, version)) {
+            return cached.price;
+        }
+        double price = computeEffectivePrice(item, rulesByTarget);
+        effectivePrices.put(key, new EffectivePrice(item.getPrice(), item.getDepartment(), version, price));
+        return price;
+    }
+
+    /**
+     * Returns the discount to show next to an item in price lists: the first item-specific
+     * discount, otherwise the most recently added department or store-wide discount.
+     *
+     * @param item The item being listed.
+     * @return The discount, or null if none targets the item.
+     */
+    public Discount getApplicableDiscount(Item item) {
+        Map<String, TargetRules> rules = rulesByTarget;
+        TargetRules itemRules = rules.get(item.getName().toLowerCase());
+        if (itemRules != null) {
+            return itemRules.first;
+        }
+        TargetRules departmentRules = rules.get(item.getDepartment().toLowerCase());
+        TargetRules storeRules = rules.get(STORE_WIDE);
+        if (departmentRules == null) {
+            return storeRules == null ? null : storeRules.last;
+        }
+        if (storeRules == null) {
+            return departmentRules.last;
+        }
+        return departmentRules.lastIndex > storeRules.lastIndex ? departmentRules.last : storeRules.last;
+    }
+
+    private static double computeEffectivePrice(Item item, Map<String, TargetRules> rules) {
+        double originalPrice = item.getPrice();
+
+        // Check for item-specific discount
+        TargetRules itemRules = rules.get(item.getName().toLowerCase());
+        double itemDiscount = itemRules == null ? 0 : itemRules.discountOn(originalPrice);
+
+        // Check for department-wide discount
+        TargetRules departmentRules = rules.get(item.getDepartment().toLowerCase());
+        double departmentDiscount = departmentRules != null && departmentRules.maxValue > 0
+                ? departmentRules.discountOn(originalPrice) : 0;
+
+        // Check for store-wide discount
+        TargetRules storeRules = rules.get(STORE_WIDE);
+        double storeWideDiscount = storeRules != null && storeRules.first.getValue() > 0
+                ? storeRules.discountOn(originalPrice) : 0;
+
+        // Apply the highest priority discount
+        double totalDiscount = Math.max(itemDiscount, Math.max(departmentDiscount, storeWideDiscount));
+
+        // Ensure the discount does not exceed the price
+        totalDiscount = Math.min(totalDiscount, originalPrice);
+
+        return originalPrice - totalDiscount;
+    }
+
+    /**
+     * Regroups the discount list by target and drops every cached effective price.
+     */
+    private void compileRules() {
+        Map<String, TargetRules> compiled = new HashMap<>();
+        for (int i = 0; i < discounts.size(); i++) {
+            Discount discount = discounts.get(i);
+            compiled.computeIfAbsent(discount.getTarget().toLowerCase(), t -> new TargetRules()).add(discount, i);
+        }
+        rulesByTarget = compiled;
+        rulesVersion++;
+        effectivePrices.clear();
+    }
+
+    /**
+     * All discounts for one target, reduced to what pricing needs.
+     */
+    private static final class TargetRules {
+        private double maxPercentage = Double.NEGATIVE_INFINITY;
+        private double maxFixed = Double.NEGATIVE_INFINITY;
+        private double maxValue = Double.NEGATIVE_INFINITY;
+        private Discount first;
+        private Discount last;
+        private int lastIndex;
+
+        private void add(Discount discount, int index) {
+            if (discount.getType().equalsIgnoreCase("PERCENTAGE")) {
+                maxPercentage = Math.max(maxPercentage, discount.getValue());
+            } else {
+                maxFixed = Math.max(maxFixed, discount.getValue());
+            }
+            maxValue = Math.max(maxValue, discount.getValue());
+            if (first == null) {
+                first = discount;
+            }
+            last = discount;
+            lastIndex = index;
+        }
+
+        // The largest amount any of the discounts takes off the given price
+        private double discountOn(double price) {
+            double percentageDiscount = maxPercentage == Double.NEGATIVE_INFINITY
+                    ? Double.NEGATIVE_INFINITY : price * (maxPercentage / 100);
+            return Math.max(percentageDiscount, maxFixed);
+        }
+    }
+
+    private static final class EffectivePrice {
+        private final double basePrice;
+        private final String department;
+        private final int version;
+        private final double price;
+
+        private EffectivePrice(double basePrice, String department, int version, double price) {
+            this.basePrice = basePrice;
+            this.department = department;
+            this.version = version;
+            this.price = price;
+        }
+
+        private boolean isValidFor(Item item, int currentVersion) {
+            return version == currentVersion && basePrice == item.getPrice()
+                    && Objects.equals(department, item.getDepartment());
+        }
     }
 
     private void saveDiscountsToFile() {
@@ -134,10 +277,10 @@ public class DiscountRepository {
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line = reader.readLine(); // Skip header
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 2) {
-                    String target = parts[0];
-                    double originalPrice = Double.parseDouble(parts[1]);
+                CsvTokenizer parts = CsvTokenizer.of(line);
+                if (parts.size() == 2) {
+                    String target = parts.getString(0);
+                    double originalPrice = parts.getDouble(1);
                     originalPrices.put(target, originalPrice);
                 }
             }
@@ -0,0 +1,290 @@
+package com.sportinggoods.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Energy readings over time, per utility and per store. Each series keeps minute, hour
+ * and day tiers, each a fixed ring of buckets in primitive arrays, and a reading is added
+ * to its bucket in every tier as it arrives. Old buckets are overwritten as time moves
+ * on, so memory stays fixed however long the application runs.
+ *
+ * Store series are kept alongside the utility series, so a region-wide query reads only
+ * a few buckets per store and never the utilities file.
+ *
+ * A query over a window reads the finest tier that covers it. Sum and mean are over the
+ * readings in the window, as is the standard deviation, from each bucket's sum of
+ * squares; p95 is taken over the mean reading of each bucket. Totals for
+ * ranking stores add up whole hours and days from the coarser tiers, so a 24 hour total
+ * reads around a hundred buckets rather than 1440.
+ */
+public class EnergyTimeSeries {
+    private static final int MINUTE = 1;
+    private static final int HOUR = 60;
+    private static final int DAY = 24 * 60;
+
+    // Buckets per tier: utilities keep a short history, stores a longer one
+    private static final int[] UTILITY_BUCKETS = {120, 72, 90};        // 2 hours, 3 days, 90 days
+    private static final int[] STORE_BUCKETS = {24 * 60, 31 * 24, 366}; // 1 day, 31 days, 1 year
+    private static final int[] BUCKET_MINUTES = {MINUTE, HOUR, DAY};
+
+    private final ConcurrentHashMap<String, Series> utilitySeries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Series> storeSeries = new ConcurrentHashMap<>();
+
+    /**
+     * Aggregates of a series over a window.
+     */
+    public static class Stats {
+        private final double sum;
+        private final double sumOfSquares;
+        private final long readings;
+        private final double p95;
+
+        private Stats(double sum, double sumOfSquares, long readings, double p95) {
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+            this.readings = readings;
+            this.p95 = p95;
+        }
+
+        public double getSum() { return sum; }
+        public long getReadings() { return readings; }
+        public double getMean() { return readings == 0 ? 0 : sum / readings; }
+        public double getStdDev() {
+            double mean = getMean();
+            return readings == 0 ? 0 : Math.sqrt(Math.max(0, sumOfSquares / readings - mean * mean));
+        }
+        public double getP95() { return p95; }
+
+        @Override
+        public String toString() {
+            return String.format("Total: %.1f kWh, Mean: %.1f kWh, p95: %.1f kWh (%d readings)", sum, getMean(), p95, readings);
+        }
+    }
+
+    /**
+     * A store's total consumption over a window, from {@link #getTopStores}.
+     */
+    public static class StoreUsage {
+        private final int storeId;
+        private final double total;
+
+        private StoreUsage(int storeId, double total) {
+            this.storeId = storeId;
+            this.total = total;
+        }
+
+        public int getStoreId() { return storeId; }
+        public double getTotal() { return total; }
+
+        @Override
+        public String toString() {
+            return String.format("Store %d: %.1f kWh", storeId, total);
+        }
+    }
+
+    // One series: a ring of buckets per tier, all updated together under the series lock
+    private static final class Series {
+        private final Tier[] tiers;
+
+        private Series(int[] buckets) {
+            tiers = new Tier[BUCKET_MINUTES.length];
+            for (int i = 0; i < tiers.length; i++) {
+                tiers[i] = new Tier(BUCKET_MINUTES[i], buckets[i]);
+            }
+        }
+
+        private synchronized void add(long epochMinute, double value) {
+            for (Tier tier : tiers) {
+                tier.add(epochMinute / tier.bucketMinutes, value);
+            }
+        }
+
+        private synchronized Stats stats(long epochMinute, long windowMinutes) {
+            Tier tier = tierFor(windowMinutes);
+            long to = epochMinute / tier.bucketMinutes;
+            return tier.stats(to - tier.bucketsFor(windowMinutes) + 1, to);
+        }
+
+        private synchronized double sum(long epochMinute, long windowMinutes) {
+            return sum(tiers.length - 1, epochMinute - windowMinutes + 1, epochMinute);
+        }
+
+        // Sum of the minutes from..to: whole buckets of the given tier where it still holds
+        // them, and the finer tiers for the partial buckets at either end
+        private double sum(int level, long from, long to) {
+            if (from > to) {
+                return 0;
+            }
+            Tier tier = tiers[level];
+            if (level == 0) {
+                return tier.sum(from, to);
+            }
+            long firstWhole = Math.floorDiv(from + tier.bucketMinutes - 1, tier.bucketMinutes);
+            long lastWhole = Math.floorDiv(to + 1, tier.bucketMinutes) - 1;
+            if (firstWhole > lastWhole || firstWhole <= tier.newest - tier.sums.length) {
+                return sum(level - 1, from, to);
+            }
+            return sum(level - 1, from, firstWhole * tier.bucketMinutes - 1)
+                    + tier.sum(firstWhole, lastWhole)
+                    + sum(level - 1, (lastWhole + 1) * tier.bucketMinutes, to);
+        }
+
+        // The finest tier that reaches back over the whole window, else the longest one
+        private Tier tierFor(long windowMinutes) {
+            for (Tier tier : tiers) {
+                if ((long) tier.sums.length * tier.bucketMinutes >= windowMinutes) {
+                    return tier;
+                }
+            }
+            return tiers[tiers.length - 1];
+        }
+    }
+
+    private static final class Tier {
+        private final int bucketMinutes;
+        private final double[] sums;
+        private final double[] squares;
+        private final int[] counts;
+        private long newest = Long.MIN_VALUE; // Bucket number of the latest reading
+
+        private Tier(int bucketMinutes, int buckets) {
+            this.bucketMinutes = bucketMinutes;
+            this.sums = new double[buckets];
+            this.squares = new double[buckets];
+            this.counts = new int[buckets];
+        }
+
+        private void add(long bucket, double value) {
+            if (newest == Long.MIN_VALUE) {
+                newest = bucket;
+            } else if (bucket > newest) {
+                // Empty the buckets being reused for the new time span
+                long stale = Math.min(bucket - newest, sums.length);
+                for (long i = 1; i <= stale; i++) {
+                    int index = index(newest + i);
+                    sums[index] = 0;
+                    squares[index] = 0;
+                    counts[index] = 0;
+                }
+                newest = bucket;
+            } else if (bucket <= newest - sums.length) {
+                return; // Older than anything kept
+            }
+            int index = index(bucket);
+            sums[index] += value;
+            squares[index] += value * value;
+            counts[index]++;
+        }
+
+        private long bucketsFor(long windowMinutes) {
+            return Math.max(1, Math.min(sums.length, (windowMinutes + bucketMinutes - 1) / bucketMinutes));
+        }
+
+        private double sum(long from, long to) {
+            double sum = 0;
+            for (long bucket = Math.max(from, newest - sums.length + 1); bucket <= Math.min(to, newest); bucket++) {
+                sum += sums[index(bucket)];
+            }
+            return sum;
+        }
+
+        private Stats stats(long from, long to) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            long readings = 0;
+            double[] means = new double[sums.length];
+            int filled = 0;
+            for (long bucket = Math.max(from, newest - sums.length + 1); bucket <= Math.min(to, newest); bucket++) {
+                int index = index(bucket);
+                if (counts[index] > 0) {
+                    sum += sums[index];
+                    sumOfSquares += squares[index];
+                    readings += counts[index];
+                    means[filled++] = sums[index] / counts[index];
+                }
+            }
+            double p95 = 0;
+            if (filled > 0) {
+                Arrays.sort(means, 0, filled);
+                p95 = means[(int) Math.ceil(0.95 * filled) - 1];
+            }
+            return new Stats(sum, sumOfSquares, readings, p95);
+        }
+
+        private int index(long bucket) {
+            return (int) Math.floorMod(bucket, (long) sums.length);
+        }
+    }
+
+    /**
+     * Adds a reading to the utility's series and its store's.
+     *
+     * @param time When the reading was taken; readings older than a tier's history are
+     *             left out of that tier.
+     */
+    public void record(String utilityId, int storeId, LocalDateTime time, double energyConsumption) {
+        long epochMinute = epochMinute(time);
+        utilitySeries.computeIfAbsent(UtilityRepository.key(utilityId, storeId), key -> new Series(UTILITY_BUCKETS))
+                .add(epochMinute, energyConsumption);
+        storeSeries.computeIfAbsent(storeId, id -> new Series(STORE_BUCKETS))
+                .add(epochMinute, energyConsumption);
+    }
+
+    /**
+     * @return The utility's aggregates over the window ending now, or null if it has no readings.
+     */
+    public Stats getUtilityStats(String utilityId, int storeId, Duration window) {
+        Series series = utilitySeries.get(UtilityRepository.key(utilityId, storeId));
+        return series == null ? null : series.stats(epochMinute(LocalDateTime.now()), window.toMinutes());
+    }
+
+    /**
+     * @return The store's aggregates over the window ending now, or null if it has no readings.
+     */
+    public Stats getStoreStats(int storeId, Duration window) {
+        Series series = storeSeries.get(storeId);
+        return series == null ? null : series.stats(epochMinute(LocalDateTime.now()), window.toMinutes());
+    }
+
+    /**
+     * @return The stores that used the most energy over the window ending now, most first.
+     */
+    public List<StoreUsage> getTopStores(int limit, Duration window) {
+        long now = epochMinute(LocalDateTime.now());
+        long windowMinutes = window.toMinutes();
+        Comparator<StoreUsage> byTotal = Comparator.comparingDouble(StoreUsage::getTotal);
+        PriorityQueue<StoreUsage> top = new PriorityQueue<>(byTotal); // Smallest of the best so far on top
+        storeSeries.forEach((storeId, series) -> {
+            double total = series.sum(now, windowMinutes);
+            if (total <= 0) {
+                return;
+            }
+            if (top.size() < limit) {
+                top.add(new StoreUsage(storeId, total));
+            } else if (limit > 0 && total > top.peek().getTotal()) {
+                top.poll();
+                top.add(new StoreUsage(storeId, total));
+            }
+        });
+        List<StoreUsage> result = new ArrayList<>(top);
+        result.sort(byTotal.reversed());
+        return result;
+    }
+
+    public void clear() {
+        utilitySeries.clear();
+        storeSeries.clear();
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+}
@@ -1,6 +1,7 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.Feedback;
+import com.sportinggoods.util.CsvTokenizer;
 import com.sportinggoods.util.FileUtils;
 
 import java.time.LocalDate;
@@ -23,7 +24,7 @@ public class FeedbackRepository {
      * @param content    The content of the feedback.
      */
     public void logFeedback(int customerId, String content, String status) {
-        String feedbackId = "FB" + (getAllFeedback().size() + 1);
+        String feedbackId = "FB" + (findHighestFeedbackNumber() + 1);
         String date = LocalDate.now().toString();
         String feedbackEntry = String.join(",", feedbackId, String.valueOf(customerId), content, status, date);
         if (FileUtils.appendToFile(FILE_PATH, feedbackEntry)) {
@@ -88,21 +89,73 @@ public class FeedbackRepository {
         List<String> lines = FileUtils.readAllLines(FILE_PATH);
 
         for (String line : lines) {
-            String[] parts = line.split(",");
-            if (parts.length >= 5) {
-                Feedback feedback = new Feedback(
-                        parts[0], // feedbackId
-                        Integer.parseInt(parts[1]), // customerId
-                        parts[2], // content
-                        parts[3], // // response ("Escalated", "Resolved", etc.)
-                        LocalDate.parse(parts[4]) // date
-                );
+            Feedback feedback = parseFeedback(line);
+            if (feedback != null) {
                 feedbackList.add(feedback);
             }
         }
         return feedbackList;
     }
 
+    /**
+     * Retrieves the most recent feedback, newest first, reading only the end of the file.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return Up to limit Feedback objects, newest first.
+     */
+    public List<Feedback> getRecentFeedback(int limit) {
+        List<Feedback> feedbackList = new ArrayList<>();
+        if (limit <= 0) {
+            return feedbackList;
+        }
+        FileUtils.forEachLineReverse(FILE_PATH, line -> {
+            Feedback feedback = parseFeedback(line);
+            if (feedback != null) {
+                feedbackList.add(feedback);
+            }
+            return feedbackList.size() < limit;
+        });
+        return feedbackList;
+    }
+
+    /**
+     * Finds the number of the newest feedback ID (e.g. 12 for "FB12") from the end of the file,
+     * so logging feedback does not read the whole history.
+     *
+     * @return The highest feedback number, or 0 if there is none.
+     */
+    private int findHighestFeedbackNumber() {
+        int[] highest = {0};
+        FileUtils.forEachLineReverse(FILE_PATH, line -> {
+            int comma = line.indexOf(',');
+            if (comma > 2 && line.startsWith("FB")) {
+                try {
+                    highest[0] = Integer.parseInt(line.substring(2, comma));
+                    return false; // IDs are appended in order, so the last valid one is the highest
+                } catch (NumberFormatException e) {
+                    // Not a numbered ID, keep looking
+                }
+            }
+            return true;
+        });
+        return highest[0];
+    }
+
+    // Parses one feedback row, or returns null if it is malformed
+    private Feedback parseFeedback(String line) {
+        CsvTokenizer parts = CsvTokenizer.of(line);
+        if (parts.size() < 5) {
+            return null;
+        }
+        return new Feedback(
+                parts.getString(0), // feedbackId
+                parts.getInt(1), // customerId
+                parts.getString(2), // content
+                parts.getString(3), // // response ("Escalated", "Resolved", etc.)
+                parts.getDate(4) // date
+        );
+    }
+
     /**
      * Saves all feedback back to the CSV file.
      *
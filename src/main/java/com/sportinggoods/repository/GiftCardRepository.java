@@ -1,6 +1,7 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.GiftCard;
+import com.sportinggoods.util.CsvTokenizer;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,13 +35,13 @@ public class GiftCardRepository {
             reader.readLine();
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", -1);
-                if (parts.length >= 4) {
+                CsvTokenizer parts = CsvTokenizer.of(line);
+                if (parts.size() >= 4) {
                     try {
-                        String code = parts[0].trim();
-                        double balance = Double.parseDouble(parts[1].trim());
-                        boolean isActive = parts[2].trim().equalsIgnoreCase("active");
-                        List<String> transactionHistory = List.of(parts[3].trim().split(";"));
+                        String code = parts.getString(0).trim();
+                        double balance = parts.getDouble(1);
+                        boolean isActive = parts.getString(2).trim().equalsIgnoreCase("active");
+                        List<String> transactionHistory = List.of(parts.getString(3).trim().split(";"));
 
                         GiftCard giftCard = new GiftCard(code, balance);
                         if (!isActive) {
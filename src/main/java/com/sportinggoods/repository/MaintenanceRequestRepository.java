@@ -2,47 +2,115 @@ package com.sportinggoods.repository;
 
 import com.sportinggoods.model.MaintenanceRequest;
 import com.sportinggoods.util.FileUtils;
+import com.sportinggoods.util.TimingWheel;
+import com.sportinggoods.util.WriteBehindFile;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Maintenance requests are loaded from the file once and kept in memory. Each store has
+ * a dispatch queue, a min-heap of its open requests keyed by deadline, so the next job
+ * is found in O(log n). Claiming a job takes it off the heap under the repository lock,
+ * so two technicians never get the same request. Changes are merged into the file by a
+ * write-behind flusher.
+ *
+ * A request's deadline is lastUpdated + timeRemaining as stored; it stays fixed while the
+ * remaining time counts down, so the heap never needs re-sorting as time passes.
+ *
+ * Every queued request also has an SLA timer on a shared timing wheel. When its deadline
+ * passes while it is still waiting, the escalation handler is called on the wheel's thread.
+ * An escalated request keeps the time of its next check in the file, so a restart picks
+ * up from there rather than escalating it again from its original deadline. Timers that
+ * come due before a handler is set are parked, and fire as soon as one is set.
+ *
+ * Settings (system properties):
+ * - maintenance.slaTickMs: timing resolution of SLA timers (default 1000)
+ * - maintenance.slaWheelSize: slots in the timing wheel (default 512)
+ */
 public class MaintenanceRequestRepository {
-    private final String filePath = "data/maintenanceRequests.csv";
+    private static final String FILE_PATH = "data/maintenanceRequests.csv";
+    private static final String HEADER = "requestId,storeId,location,issueType,urgency,timeRemaining,status,lastUpdated,nextEscalation";
+    private final String filePath = FILE_PATH;
+
+    // Shared by every repository so all technicians dispatch from the same queues
+    private static WriteBehindFile requestsFile;
+    private static Map<String, MaintenanceRequest> requestsById;
+    private static final Map<Integer, PriorityQueue<QueueEntry>> dispatchQueues = new HashMap<>();
+    // The live heap entry of each queued request; heap entries not in here are stale and skipped
+    private static final Map<String, QueueEntry> queuedEntries = new HashMap<>();
+
+    private static final Comparator<QueueEntry> DEADLINE_ORDER = Comparator
+            .comparing((QueueEntry entry) -> entry.deadline)
+            .thenComparingLong(entry -> entry.sequence);
+    private static long nextSequence;
+
+    private static final long SLA_TICK_MS = Long.getLong("maintenance.slaTickMs", 1000L);
+    private static final TimingWheel slaWheel = new TimingWheel("maintenance-sla", SLA_TICK_MS, TimeUnit.MILLISECONDS,
+            Integer.getInteger("maintenance.slaWheelSize", 512));
+    private static final Map<String, TimingWheel.Timer> slaTimers = new HashMap<>();
+    private static volatile Consumer<MaintenanceRequest> escalationHandler;
+    // Timers that came due while no handler was set
+    private static final List<QueueEntry> parkedEntries = new ArrayList<>();
+
+    private static class QueueEntry {
+        private final String requestId;
+        private final LocalDateTime deadline;
+        private final long sequence; // Equal deadlines go in the order they were queued
+
+        private QueueEntry(String requestId, LocalDateTime deadline, long sequence) {
+            this.requestId = requestId;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+    }
 
     public MaintenanceRequestRepository() {
-        FileUtils.initializeFile(filePath, "requestId,storeId,location,issueType,urgency,timeRemaining,status,lastUpdated");
+        FileUtils.initializeFile(filePath, HEADER);
+        loadRequests();
     }
 
     public boolean addRequest(MaintenanceRequest request) {
-        List<MaintenanceRequest> requests = getAllRequests();
-        requests.add(request);
-        return saveRequestsToFile(requests);
+        synchronized (MaintenanceRequestRepository.class) {
+            requestsById.put(request.getRequestId(), request);
+            requeue(request);
+            markDirty(request);
+        }
+        return true;
     }
 
     public List<MaintenanceRequest> getAllRequests() {
-        List<MaintenanceRequest> requests = new ArrayList<>();
-        List<String> lines = FileUtils.readAllLines(filePath);
-        for (String line : lines) {
-            try {
-                MaintenanceRequest request = MaintenanceRequest.fromCSV(line);
-                request.updateTimeRemaining();
-                requests.add(request);
-            } catch (IllegalArgumentException e) {
-                System.err.println("Error reading request: " + e.getMessage());
+        synchronized (MaintenanceRequestRepository.class) {
+            List<MaintenanceRequest> requests = new ArrayList<>();
+            for (MaintenanceRequest request : requestsById.values()) {
+                requests.add(snapshot(request));
             }
+            return requests;
         }
-        return requests;
     }
 
     public List<MaintenanceRequest> getAllRequestsByStoreId(int storeId) {
-        return getAllRequests().stream()
-                .filter(request -> request.getStoreId() == storeId)
-                .collect(Collectors.toList());
+        synchronized (MaintenanceRequestRepository.class) {
+            List<MaintenanceRequest> requests = new ArrayList<>();
+            for (MaintenanceRequest request : requestsById.values()) {
+                if (request.getStoreId() == storeId) {
+                    requests.add(snapshot(request));
+                }
+            }
+            return requests;
+        }
     }
 
     public List<MaintenanceRequest> getAllRequestsSortedByStoreId() {
@@ -51,19 +119,297 @@ public class MaintenanceRequestRepository {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Replaces all requests with the given list. Requests missing from the list are deleted.
+     */
     public boolean saveRequestsToFile(List<MaintenanceRequest> requests) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            writer.write("requestId,storeId,location,issueType,urgency,timeRemaining,status,lastUpdated");
-            writer.newLine();
+        synchronized (MaintenanceRequestRepository.class) {
+            Set<String> keep = new HashSet<>();
+            for (MaintenanceRequest request : requests) {
+                keep.add(request.getRequestId());
+            }
+            for (String requestId : new ArrayList<>(requestsById.keySet())) {
+                if (!keep.contains(requestId)) {
+                    requestsById.remove(requestId);
+                    queuedEntries.remove(requestId);
+                    cancelSlaTimer(requestId);
+                    requestsFile.remove(requestId);
+                }
+            }
             for (MaintenanceRequest request : requests) {
-                request.updateTimeRemaining();
-                writer.write(request.toCSV());
-                writer.newLine();
+                addRequest(request);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Changes a request's status. Reopening keeps the request's deadline; any other status
+     * stops the clock, as before.
+     *
+     * @return True if updated, false if there is no request with the ID.
+     */
+    public boolean updateRequestStatus(String requestId, String newStatus) {
+        synchronized (MaintenanceRequestRepository.class) {
+            MaintenanceRequest request = requestsById.get(requestId);
+            if (request == null) {
+                return false;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (newStatus.equals("Open")) {
+                request.setTimeRemaining(remainingSeconds(request, now));
+            } else {
+                request.setTimeRemaining(0);
+                request.setNextEscalation(null);
+            }
+            request.setStatus(newStatus);
+            request.setLastUpdated(now);
+            requeue(request);
+            markDirty(request);
+            return true;
+        }
+    }
+
+    // ==========================
+    // Dispatch
+    // ==========================
+
+    /**
+     * @return The store's open request with the earliest deadline, without claiming it,
+     *         or null if none is waiting.
+     */
+    public MaintenanceRequest peekNextRequest(int storeId) {
+        synchronized (MaintenanceRequestRepository.class) {
+            QueueEntry head = head(storeId);
+            return head == null ? null : snapshot(requestsById.get(head.requestId));
+        }
+    }
+
+    /**
+     * Claims the store's open request with the earliest deadline for a technician: it is
+     * taken off the queue and marked In Progress, keeping its deadline.
+     *
+     * @return The claimed request, or null if none is waiting.
+     */
+    public MaintenanceRequest claimNextRequest(int storeId) {
+        synchronized (MaintenanceRequestRepository.class) {
+            QueueEntry head = head(storeId);
+            if (head == null) {
+                return null;
+            }
+            dispatchQueues.get(storeId).poll();
+            queuedEntries.remove(head.requestId);
+            cancelSlaTimer(head.requestId);
+
+            MaintenanceRequest request = requestsById.get(head.requestId);
+            LocalDateTime now = LocalDateTime.now();
+            request.setTimeRemaining(remainingSeconds(request, now));
+            request.setLastUpdated(now);
+            request.setStatus("In Progress");
+            markDirty(request);
+            return snapshot(request);
+        }
+    }
+
+    /**
+     * Puts a claimed request back on its store's queue, e.g. when the technician could not
+     * take it on. Its original deadline is kept.
+     *
+     * @return True if the request was in progress and is open again.
+     */
+    public boolean releaseRequest(String requestId) {
+        synchronized (MaintenanceRequestRepository.class) {
+            MaintenanceRequest request = requestsById.get(requestId);
+            if (request == null || !"In Progress".equalsIgnoreCase(request.getStatus())) {
+                return false;
+            }
+            return updateRequestStatus(requestId, "Open");
+        }
+    }
+
+    // ==========================
+    // SLA Escalation
+    // ==========================
+
+    /**
+     * Sets what happens when a waiting request passes its deadline. The handler gets a copy
+     * of the request and runs on the timer thread, so it should be quick. Replaces any
+     * previous handler. Requests that came due while there was no handler are passed to
+     * it straight away.
+     */
+    public void setEscalationHandler(Consumer<MaintenanceRequest> handler) {
+        synchronized (MaintenanceRequestRepository.class) {
+            escalationHandler = handler;
+            if (handler == null) {
+                return;
+            }
+            for (QueueEntry entry : parkedEntries) {
+                // Fired from the wheel, so the handler still runs on the timer thread
+                if (queuedEntries.get(entry.requestId) == entry && !slaTimers.containsKey(entry.requestId)) {
+                    scheduleSlaTimer(entry, 0);
+                }
+            }
+            parkedEntries.clear();
+        }
+    }
+
+    /**
+     * Raises a waiting request's urgency. Its deadline, and so its place in the queue,
+     * is kept.
+     *
+     * @param requestId        The request to escalate.
+     * @param urgency          The new urgency.
+     * @param nextCheckSeconds When to call the escalation handler again if the request is
+     *                         still waiting; 0 for never.
+     * @return True if escalated, false if the request is no longer waiting.
+     */
+    public boolean escalateRequest(String requestId, String urgency, long nextCheckSeconds) {
+        synchronized (MaintenanceRequestRepository.class) {
+            MaintenanceRequest request = requestsById.get(requestId);
+            QueueEntry entry = queuedEntries.get(requestId);
+            if (request == null || entry == null) {
+                return false;
+            }
+            // The next check is saved with the request, so a restart does not escalate it again early
+            request.setUrgency(urgency);
+            request.setNextEscalation(nextCheckSeconds > 0 ? LocalDateTime.now().plusSeconds(nextCheckSeconds) : LocalDateTime.MAX);
+            markDirty(request);
+            cancelSlaTimer(requestId);
+            if (nextCheckSeconds > 0) {
+                scheduleSlaTimer(entry, TimeUnit.SECONDS.toNanos(nextCheckSeconds));
             }
             return true;
-        } catch (IOException e) {
-            System.err.println("Error saving requests to file: " + e.getMessage());
-            return false;
         }
     }
+
+    /**
+     * @return The number of SLA timers waiting to fire.
+     */
+    public long getPendingSlaTimerCount() {
+        return slaWheel.getPendingCount();
+    }
+
+    private static void scheduleSlaTimer(QueueEntry entry, long delayNanos) {
+        slaTimers.put(entry.requestId, slaWheel.schedule(() -> slaExpired(entry), delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private static void cancelSlaTimer(String requestId) {
+        TimingWheel.Timer timer = slaTimers.remove(requestId);
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    // Runs on the timer thread when a request's deadline or next check comes due
+    private static void slaExpired(QueueEntry entry) {
+        MaintenanceRequest overdue;
+        synchronized (MaintenanceRequestRepository.class) {
+            if (queuedEntries.get(entry.requestId) != entry) {
+                return; // Claimed, changed or resolved since the timer was set
+            }
+            slaTimers.remove(entry.requestId);
+            if (escalationHandler == null) {
+                // Requests loaded at startup can come due before the controller sets its handler
+                parkedEntries.add(entry);
+                return;
+            }
+            overdue = snapshot(requestsById.get(entry.requestId));
+        }
+        Consumer<MaintenanceRequest> handler = escalationHandler;
+        if (handler != null) {
+            handler.accept(overdue);
+        }
+    }
+
+    /**
+     * Writes pending request changes to the file. Called at shutdown.
+     */
+    public static void flush() {
+        WriteBehindFile file;
+        synchronized (MaintenanceRequestRepository.class) {
+            file = requestsFile;
+        }
+        if (file != null) {
+            file.flush();
+        }
+    }
+
+    // Loads the file on first use; later repositories share the loaded requests
+    private static synchronized void loadRequests() {
+        if (requestsById != null) {
+            return;
+        }
+        requestsById = new LinkedHashMap<>();
+        FileUtils.forEachLine(FILE_PATH, line -> {
+            try {
+                MaintenanceRequest request = MaintenanceRequest.fromCSV(line);
+                requestsById.put(request.getRequestId(), request);
+                requeue(request);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error reading request: " + e.getMessage());
+            }
+            return true;
+        });
+        requestsFile = new WriteBehindFile(FILE_PATH, HEADER, line -> {
+            int comma = line.indexOf(',');
+            return comma <= 0 ? null : line.substring(0, comma); // requestId
+        });
+    }
+
+    // Puts the request on its store's heap if it is waiting for a technician, replacing any old entry
+    private static void requeue(MaintenanceRequest request) {
+        queuedEntries.remove(request.getRequestId());
+        cancelSlaTimer(request.getRequestId());
+        if (!isDispatchable(request)) {
+            return;
+        }
+        QueueEntry entry = new QueueEntry(request.getRequestId(), deadline(request), nextSequence++);
+        queuedEntries.put(request.getRequestId(), entry);
+        dispatchQueues.computeIfAbsent(request.getStoreId(), id -> new PriorityQueue<>(DEADLINE_ORDER)).add(entry);
+        // An escalated request is next checked when its escalation said, not at its deadline
+        LocalDateTime checkAt = request.getNextEscalation() != null ? request.getNextEscalation() : entry.deadline;
+        if (!checkAt.equals(LocalDateTime.MAX)) {
+            scheduleSlaTimer(entry, Duration.between(LocalDateTime.now(), checkAt).toNanos());
+        }
+    }
+
+    // Drops stale entries off the top of the heap and returns the live head, if any
+    private static QueueEntry head(int storeId) {
+        PriorityQueue<QueueEntry> queue = dispatchQueues.get(storeId);
+        if (queue == null) {
+            return null;
+        }
+        QueueEntry head;
+        while ((head = queue.peek()) != null && queuedEntries.get(head.requestId) != head) {
+            queue.poll();
+        }
+        return head;
+    }
+
+    // Open requests and safety hazards wait for a technician; anything else is resolved or on hold
+    private static boolean isDispatchable(MaintenanceRequest request) {
+        String status = request.getStatus();
+        return "Open".equalsIgnoreCase(status) || "Very Urgent".equalsIgnoreCase(status);
+    }
+
+    private static LocalDateTime deadline(MaintenanceRequest request) {
+        return request.getLastUpdated().plusSeconds(request.getTimeRemaining());
+    }
+
+    private static long remainingSeconds(MaintenanceRequest request, LocalDateTime now) {
+        return Math.max(0, Duration.between(now, deadline(request)).getSeconds());
+    }
+
+    // A copy with the remaining time as of now, so callers never change the stored request
+    private static MaintenanceRequest snapshot(MaintenanceRequest request) {
+        LocalDateTime now = LocalDateTime.now();
+        MaintenanceRequest copy = new MaintenanceRequest(request.getRequestId(), request.getStoreId(), request.getLocation(),
+                request.getIssueType(), request.getUrgency(), remainingSeconds(request, now), request.getStatus(), now);
+        copy.setNextEscalation(request.getNextEscalation());
+        return copy;
+    }
+
+    private static void markDirty(MaintenanceRequest request) {
+        requestsFile.put(request.getRequestId(), request.toCSV());
+    }
 }
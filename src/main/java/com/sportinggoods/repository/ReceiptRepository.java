@@ -1,20 +1,40 @@
 package com.sportinggoods.repository;
 
 import com.sportinggoods.model.Receipt;
+import com.sportinggoods.model.ReceiptLineItem;
+import com.sportinggoods.util.CsvTokenizer;
 import com.sportinggoods.util.FileUtils;
+import com.sportinggoods.util.IdAllocator;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ReceiptRepository {
     private final String filePath = "data/receipts.csv";
+    // Receipts are appended in roughly increasing ID order, so the highest ID is near the end
+    private static final int TAIL_BYTES = 64 * 1024;
+    private final IdAllocator receiptIds;
+
+    // Return index: customerId -> item name (lower case) -> largest quantity bought on one receipt
+    private static final String INDEX_FILE_PATH = "data/receipt_index.csv";
+    private static final String INDEX_HEADER = "customerId,receiptId,itemName,quantity";
+    // Matches "Ball: 2 x $20.0" entries in the free-text itemsDetails of older receipts
+    private static final Pattern LEGACY_ITEM_PATTERN = Pattern.compile("([^,:]+):\\s*(\\d+)\\s*x\\s*\\$?([\\d.]*)");
+    private final Map<Integer, Map<String, Integer>> returnIndex = new HashMap<>();
 
     public ReceiptRepository() {
         // Initialize the CSV file with the header if it doesn't exist
-        FileUtils.initializeFile(filePath, "receiptId,customerId,itemsDetails,totalCost,date");
+        FileUtils.initializeFile(filePath, "receiptId,customerId,lineItems,totalCost,date,couponCode,couponDiscount");
+        receiptIds = new IdAllocator(findHighestReceiptId());
+        loadReturnIndex();
     }
 
     /**
@@ -25,80 +45,126 @@ public class ReceiptRepository {
      */
     public boolean logReceipt(Receipt receipt) {
         // Assign receiptId
-        int newReceiptId = getNextReceiptId();
-        receipt.setReceiptId(newReceiptId);
-        return FileUtils.appendToFile(filePath, receipt.toCSV());
+        receipt.setReceiptId((int) receiptIds.next());
+        return appendReceipt(receipt);
     }
 
     /**
-     * Determines the next receiptId by reading the existing receipts.
+     * Logs a receipt using an ID from a block reserved by one register.
      *
-     * @return The next receiptId.
+     * @param receipt The receipt to log.
+     * @param ids     The register's block from {@link #reserveReceiptIds(int)}.
+     * @return true if logging was successful, false otherwise.
      */
-    private int getNextReceiptId() {
-        int maxId = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            // Skip header
-            reader.readLine();
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 2); // Only parse receiptId
-                if (parts.length > 0) {
-                    try {
-                        int id = Integer.parseInt(parts[0].trim());
-                        if (id > maxId) {
-                            maxId = id;
-                        }
-                    } catch (NumberFormatException e) {
-                        // Skip invalid lines
-                        System.out.println("Skipping line due to invalid receiptId: " + line);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public boolean logReceipt(Receipt receipt, IdAllocator.IdBlock ids) {
+        receipt.setReceiptId((int) ids.next());
+        return appendReceipt(receipt);
+    }
+
+    /**
+     * Reserves receipt IDs for one register so concurrent registers do not contend
+     * on the shared counter for every sale.
+     *
+     * @param blockSize The number of IDs to reserve at a time.
+     * @return The register's ID block.
+     */
+    public IdAllocator.IdBlock reserveReceiptIds(int blockSize) {
+        return receiptIds.reserveBlock(blockSize);
+    }
+
+    // Serializes appends so lines from concurrent registers do not interleave
+    private synchronized boolean appendReceipt(Receipt receipt) {
+        if (!FileUtils.appendToFile(filePath, receipt.toCSV())) {
+            return false;
+        }
+        indexReceipt(receipt);
+        return true;
+    }
+
+    /**
+     * Recovers the highest receiptId in use by scanning the file backwards from the end.
+     * Receipts are appended in roughly increasing ID order, so the scan stops once the last
+     * TAIL_BYTES of the file have been seen and a valid ID was found.
+     *
+     * @return The highest receiptId, or 0 if there are none.
+     */
+    private int findHighestReceiptId() {
+        int[] maxId = {0};
+        long[] bytesSeen = {0};
+        FileUtils.forEachLineReverse(filePath, line -> {
+            maxId[0] = Math.max(maxId[0], parseReceiptId(line));
+            bytesSeen[0] += line.length() + 1;
+            return maxId[0] == 0 || bytesSeen[0] < TAIL_BYTES;
+        });
+        return maxId[0];
+    }
+
+    private static int parseReceiptId(String line) {
+        int comma = line.indexOf(',');
+        if (comma <= 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(line.substring(0, comma).trim());
+        } catch (NumberFormatException e) {
+            return 0; // Skip invalid lines
         }
-        return maxId + 1;
     }
 
     /**
      * Checks if a customer has a valid receipt for returning a specified quantity of an item.
+     * Answered from the return index, so the cost does not depend on the number of receipts.
      *
      * @param customerId The ID of the customer.
      * @param itemName   The name of the item.
      * @param quantity   The quantity to return.
      * @return true if a valid receipt exists, false otherwise.
      */
-    public boolean hasReceiptForReturn(int customerId, String itemName, int quantity) {
-        Pattern pattern = Pattern.compile(Pattern.quote(itemName) + ":\\s*(\\d+)\\s*x", Pattern.CASE_INSENSITIVE);
+    public synchronized boolean hasReceiptForReturn(int customerId, String itemName, int quantity) {
+        Map<String, Integer> purchases = returnIndex.get(customerId);
+        if (purchases == null || itemName == null) {
+            return false;
+        }
+        Integer purchasedQuantity = purchases.get(itemName.trim().toLowerCase());
+        return purchasedQuantity != null && purchasedQuantity >= quantity;
+    }
+
+    // ==========================
+    // Return Index
+    // ==========================
+
+    /**
+     * Rebuilds the return index from every receipt in the receipts file and rewrites the index file.
+     */
+    public synchronized void rebuildReturnIndex() {
+        returnIndex.clear();
+        List<String> indexLines = new ArrayList<>();
+        indexLines.add(INDEX_HEADER);
 
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
+            CsvTokenizer parts = new CsvTokenizer();
 
             // Skip the header line
             reader.readLine();
 
             while ((line = reader.readLine()) != null) {
-                // Split the line, ignoring commas within quotes
-                String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-                if (parts.length < 5) {
+                // Older receipts quote their free-text details, which may contain commas
+                parts.reset(line);
+                if (parts.size() < 5) {
                     // Malformed line
                     continue;
                 }
 
-                int existingCustomerId;
-                try {
-                    existingCustomerId = Integer.parseInt(parts[1].trim());
-                } catch (NumberFormatException e) {
-                    // Invalid customerId, skip this line
-                    continue;
-                }
-
+                int receiptId;
+                int customerId;
                 double transactionTotal;
                 try {
-                    transactionTotal = Double.parseDouble(parts[3].trim());
+                    receiptId = parts.getInt(0);
+                    customerId = parts.getInt(1);
+                    transactionTotal = parts.getDouble(3);
                 } catch (NumberFormatException e) {
-                    // Invalid transactionTotal, skip this line
+                    // Invalid line, skip it
                     continue;
                 }
 
@@ -107,24 +173,120 @@ public class ReceiptRepository {
                     continue; // Skip return receipts
                 }
 
-                // Verify customer ID
-                if (existingCustomerId == customerId) {
-                    String itemsDetails = parts[2].replace("\"", "").trim(); // Remove quotes around itemsDetails
-
-                    Matcher matcher = pattern.matcher(itemsDetails);
-                    while (matcher.find()) {
-                        int existingQuantity = Integer.parseInt(matcher.group(1).trim());
-
-                        if (existingQuantity >= quantity) {
-                            return true;
-                        }
-                    }
+                for (ReceiptLineItem lineItem : parseLineItems(parts.getString(2), parts.isQuoted(2))) {
+                    indexPurchase(customerId, lineItem.getItemName(), lineItem.getQuantity());
+                    indexLines.add(customerId + "," + receiptId + "," + CsvTokenizer.quote(lineItem.getItemName())
+                            + "," + lineItem.getQuantity());
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return false;
+        FileUtils.writeAllLines(INDEX_FILE_PATH, indexLines);
+    }
+
+    /**
+     * Loads the return index file, rebuilding it from the receipts if it does not exist yet
+     * or if its last receipt is not the last purchase in the receipts file, e.g. because a
+     * run stopped between writing a receipt and indexing it.
+     */
+    private void loadReturnIndex() {
+        if (!new File(INDEX_FILE_PATH).exists()) {
+            rebuildReturnIndex();
+            return;
+        }
+        CsvTokenizer parts = new CsvTokenizer();
+        int lastIndexedReceiptId = 0;
+        for (String line : FileUtils.readAllLines(INDEX_FILE_PATH)) {
+            parts.reset(line);
+            if (parts.size() != 4) {
+                continue; // Skip malformed lines
+            }
+            try {
+                indexPurchase(parts.getInt(0), parts.getString(2), parts.getInt(3));
+                lastIndexedReceiptId = parts.getInt(1);
+            } catch (NumberFormatException e) {
+                // Skip invalid lines
+            }
+        }
+        if (lastIndexedReceiptId != findLastPurchaseReceiptId()) {
+            rebuildReturnIndex();
+        }
+    }
+
+    /**
+     * Finds the last receipt in the receipts file that the return index holds, i.e. the last
+     * purchase with line items, by scanning the file backwards from the end.
+     *
+     * @return Its receiptId, or 0 if there is none.
+     */
+    private int findLastPurchaseReceiptId() {
+        int[] receiptId = {0};
+        CsvTokenizer parts = new CsvTokenizer();
+        FileUtils.forEachLineReverse(filePath, line -> {
+            parts.reset(line);
+            if (parts.size() < 5) {
+                return true; // Malformed line
+            }
+            try {
+                if (parts.getDouble(3) < 0 || parseLineItems(parts.getString(2), parts.isQuoted(2)).isEmpty()) {
+                    return true; // Not indexed
+                }
+                receiptId[0] = parts.getInt(0);
+                return false;
+            } catch (NumberFormatException e) {
+                return true; // Invalid line, skip it
+            }
+        });
+        return receiptId[0];
+    }
+
+    /**
+     * Adds a logged purchase receipt to the index and appends its entries to the index file.
+     */
+    private void indexReceipt(Receipt receipt) {
+        if (receipt.getTotalCost() < 0 || receipt.getLineItems().isEmpty()) {
+            return; // Only purchase receipts allow returns
+        }
+        int customerId = receipt.getCustomer().getCustomerId();
+        StringBuilder indexLines = new StringBuilder();
+        for (ReceiptLineItem lineItem : receipt.getLineItems()) {
+            indexPurchase(customerId, lineItem.getItemName(), lineItem.getQuantity());
+            if (indexLines.length() > 0) {
+                indexLines.append(System.lineSeparator());
+            }
+            indexLines.append(customerId).append(',').append(receipt.getReceiptId()).append(',')
+                    .append(CsvTokenizer.quote(lineItem.getItemName())).append(',').append(lineItem.getQuantity());
+        }
+        FileUtils.appendToFile(INDEX_FILE_PATH, indexLines.toString());
+    }
+
+    /**
+     * Reads the line items field of a receipts file row. Current rows use the compact
+     * encoding; older rows hold quoted free text, which is parsed with a regex.
+     */
+    private static List<ReceiptLineItem> parseLineItems(String field, boolean legacy) {
+        if (!legacy) {
+            return ReceiptLineItem.decodeAll(field);
+        }
+        List<ReceiptLineItem> lineItems = new ArrayList<>();
+        Matcher matcher = LEGACY_ITEM_PATTERN.matcher(field);
+        while (matcher.find()) {
+            double unitPrice = 0.0;
+            try {
+                unitPrice = Double.parseDouble(matcher.group(3));
+            } catch (NumberFormatException e) {
+                // Price missing from the text, keep 0
+            }
+            lineItems.add(new ReceiptLineItem(matcher.group(1).trim(), Integer.parseInt(matcher.group(2)), unitPrice));
+        }
+        return lineItems;
+    }
+
+    // Keeps the largest quantity bought on a single receipt, which is what a return is checked against
+    private void indexPurchase(int customerId, String itemName, int quantity) {
+        returnIndex.computeIfAbsent(customerId, id -> new HashMap<>())
+                .merge(itemName.trim().toLowerCase(), quantity, Math::max);
     }
-}
\ No newline at end of file
+}
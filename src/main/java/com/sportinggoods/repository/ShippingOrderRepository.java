@@ -3,31 +3,63 @@ package com.sportinggoods.repository;
 import com.sportinggoods.model.Item;
 import com.sportinggoods.model.ShippingOrder;
 import com.sportinggoods.util.FileUtils;
+import com.sportinggoods.util.WriteBehindFile;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Shipping orders are loaded from the file once and kept in memory, indexed by order ID,
+ * store and status. A new or changed order is appended to the file as a new row; when
+ * the file is read, a later row for an order replaces the earlier one in its place.
+ * Once enough rows are superseded, the write-behind flusher rewrites the file without
+ * them, so adding or updating an order never rereads or rewrites the file on the
+ * caller's thread. All repository instances share the same orders. The repository
+ * keeps its own copies and callers get copies, so orders only change through the
+ * repository.
+ */
 public class ShippingOrderRepository {
-    private final String filePath = "data/shippingOrder.csv";
+    private static final String FILE_PATH = "data/shippingOrder.csv";
+    private static final String HEADER = "orderId,storeId,customerFirstName,customerLastName,items,totalPrice,shippingAddress,customerEmail,customerPhoneNumber,orderDate,status";
+    private final String filePath = FILE_PATH;
+
+    // Shared by every repository so all changes are merged into the one file
+    private static WriteBehindFile ordersFile;
+    // Every order by ID, in file order
+    private static Map<String, ShippingOrder> ordersById;
+    private static final Map<Integer, Map<String, ShippingOrder>> ordersByStore = new HashMap<>();
+    private static final Map<String, Map<String, ShippingOrder>> ordersByStatus = new HashMap<>();
+    // The store and status each order is indexed under, to move it when they change
+    private static final Map<String, Integer> indexedStore = new HashMap<>();
+    private static final Map<String, String> indexedStatus = new HashMap<>();
+    // Superseded rows the file may hold before it is compacted, at least one per order
+    private static final int COMPACT_MIN_ROWS = 1024;
+    // Rows appended for orders already in the file since it was last compacted
+    private static int staleRows;
 
     public ShippingOrderRepository() {
-        FileUtils.initializeFile(filePath, "orderId,storeId,customerFirstName,customerLastName,items,totalPrice,shippingAddress,customerEmail,customerPhoneNumber,orderDate,status");
+        FileUtils.initializeFile(filePath, HEADER);
+        loadOrders();
     }
 
     /**
      * Adds a new shipping order to the repository.
      *
      * @param order The ShippingOrder object to add.
-     * @return True if added successfully, false otherwise.
+     * @return True if added and written to the file; false if the write failed and was
+     *         queued to be retried.
      */
     public boolean addShippingOrder(ShippingOrder order) {
-        List<ShippingOrder> orders = getAllShippingOrders();
-        orders.add(order);
-        return saveOrdersToFile(orders);
+        synchronized (ShippingOrderRepository.class) {
+            boolean existing = ordersById.containsKey(order.getOrderId());
+            return append(index(order), existing ? 1 : 0);
+        }
     }
 
     /**
@@ -38,21 +70,16 @@ public class ShippingOrderRepository {
      * @return True if updated successfully, false if order not found.
      */
     public boolean updateOrderStatus(String orderId, String status) {
-        List<ShippingOrder> orders = getAllShippingOrders();
-        boolean found = false;
-
-        for (ShippingOrder order : orders) {
-            if (order.getOrderId().equals(orderId)) {
-                order.setStatus(status);
-                found = true;
-                break;
+        synchronized (ShippingOrderRepository.class) {
+            ShippingOrder order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
             }
+            order.setStatus(status);
+            index(order);
+            append(order, 1);
+            return true;
         }
-
-        if (found) {
-            return saveOrdersToFile(orders);
-        }
-        return false;
     }
 
     /**
@@ -62,81 +89,97 @@ public class ShippingOrderRepository {
      * @return True if updated successfully, false if order not found.
      */
     public boolean updateOrderQuantity(String orderId, Map<Item, Integer> items) {
-        List<ShippingOrder> orders = getAllShippingOrders();
-
-        ShippingOrder order = getOrderById(orderId);
-
-        order.setItems(items);
-
-        return saveOrdersToFile(orders);
+        synchronized (ShippingOrderRepository.class) {
+            ShippingOrder order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
+            order.setItems(items);
+            append(order, 1);
+            return true;
+        }
     }
 
     /**
      * Updates the price of an existing shipping order.
      *
      * @param orderId The ID of the order to update.
+     * @param items   The items and quantities the price is for.
      * @return True if updated successfully, false if order not found.
      */
     public boolean updateOrderPrice(String orderId, Map<Item, Integer> items) {
-        List<ShippingOrder> orders = getAllShippingOrders();
+        synchronized (ShippingOrderRepository.class) {
+            ShippingOrder order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
 
-        ShippingOrder order = getOrderById(orderId);
+            double newPrice = 0;
 
-        double newPrice = 0;
+            for (Map.Entry<Item, Integer> entry : items.entrySet()) {
+                Item item = entry.getKey();
 
-        for(Map.Entry<Item, Integer> entry : order.getItems().entrySet()) {
-            Item item = entry.getKey();
+                newPrice += Math.round(item.getPrice() * entry.getValue() * 100.0) / 100.0;
+            }
 
-            newPrice += Math.round(item.getPrice() * item.getQuantity() * 100.0) / 100.0;  //might need to change
+            order.setTotalPrice(newPrice);
+            append(order, 1);
+            return true;
         }
-
-        order.setTotalPrice(newPrice);
-
-        return saveOrdersToFile(orders);
     }
 
     /**
      * Retrieves a shipping order by its ID.
      *
      * @param orderId The ID of the order.
-     * @return The ShippingOrder object if found, null otherwise.
+     * @return A copy of the order if found, null otherwise.
      */
     public ShippingOrder getOrderById(String orderId) {
-        List<ShippingOrder> orders = getAllShippingOrders();
-        for (ShippingOrder order : orders) {
-            if (order.getOrderId().equals(orderId)) {
-                return order;
-            }
+        synchronized (ShippingOrderRepository.class) {
+            ShippingOrder order = ordersById.get(orderId);
+            return order == null ? null : snapshot(order);
         }
-        return null;
     }
 
     /**
      * Retrieves all shipping orders from the repository.
      *
-     * @return A list of all ShippingOrder objects.
+     * @return Copies of all orders, in file order.
      */
     public List<ShippingOrder> getAllShippingOrders() {
-        List<ShippingOrder> orders = new ArrayList<>();
-        List<String> lines = FileUtils.readAllLines(filePath);
-        for (String line : lines) {
-            ShippingOrder order = ShippingOrder.fromCSV(line);
-            if (order != null) {
-                orders.add(order);
-            }
+        synchronized (ShippingOrderRepository.class) {
+            return snapshots(ordersById);
         }
-        return orders;
     }
 
     public List<ShippingOrder> getAllShippingOrdersByStoreId(int storeId) {
-        List<ShippingOrder> orders = new ArrayList<>();
-        List<String> lines = FileUtils.readAllLines(filePath);
-        for (String line : lines) {
-            ShippingOrder order = ShippingOrder.fromCSV(line);
-            if (order != null && order.getStoreId() == storeId) {
-                orders.add(order);
-            }
+        synchronized (ShippingOrderRepository.class) {
+            return snapshots(ordersByStore.get(storeId));
+        }
+    }
+
+    /**
+     * Retrieves the orders with a status, e.g. "Confirmed", ignoring case.
+     *
+     * @param status The status to look for.
+     * @return The matching orders, oldest first.
+     */
+    public List<ShippingOrder> getOrdersByStatus(String status) {
+        synchronized (ShippingOrderRepository.class) {
+            return snapshots(ordersByStatus.get(statusKey(status)));
         }
+    }
+
+    /**
+     * Retrieves one store's orders with a status, ignoring case.
+     *
+     * @param storeId The store ID.
+     * @param status  The status to look for.
+     * @return The matching orders, oldest first.
+     */
+    public List<ShippingOrder> getOrdersByStatus(int storeId, String status) {
+        List<ShippingOrder> orders = getOrdersByStatus(status);
+        orders.removeIf(order -> order.getStoreId() != storeId);
         return orders;
     }
 
@@ -148,32 +191,188 @@ public class ShippingOrderRepository {
      * @return True if deleted successfully, false if order not found.
      */
     public boolean deleteOrder(String orderId) {
-        List<ShippingOrder> orders = getAllShippingOrders();
-        boolean found = orders.removeIf(order -> order.getOrderId().equals(orderId));
-        return found && saveOrdersToFile(orders);
+        synchronized (ShippingOrderRepository.class) {
+            ShippingOrder order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
+            unindex(orderId);
+            ordersFile.remove(orderId);
+            return true;
+        }
     }
 
     /**
-     * Saves the list of orders to the file, overwriting the existing content.
+     * Replaces all orders with the given list. Orders missing from the list are deleted.
      *
      * @param orders List of ShippingOrder objects to save to the file.
      * @return True if saved successfully, false otherwise.
      */
     public boolean saveOrdersToFile(List<ShippingOrder> orders) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Write the CSV header
-            writer.write("orderId,storeId,customerFirstName,customerLastName,items,totalPrice,shippingAddress,customerEmail,customerPhoneNumber,orderDate,status");
-            writer.newLine();
-
-            // Write each order to the file
+        synchronized (ShippingOrderRepository.class) {
+            Set<String> keep = new HashSet<>();
+            for (ShippingOrder order : orders) {
+                keep.add(order.getOrderId());
+            }
+            for (String orderId : new ArrayList<>(ordersById.keySet())) {
+                if (!keep.contains(orderId)) {
+                    unindex(orderId);
+                    ordersFile.remove(orderId);
+                }
+            }
             for (ShippingOrder order : orders) {
-                writer.write(order.toCSV());
-                writer.newLine();
+                ordersFile.put(order.getOrderId(), index(order).toCSV());
             }
             return true;
-        } catch (IOException e) {
-            System.out.println("Error saving orders to file: " + e.getMessage());
-            return false;
         }
     }
+
+    /**
+     * Saves new and changed orders as one batch: they are indexed together and appended
+     * to the file in a single write before this returns.
+     *
+     * @param orders The orders to add or update.
+     * @return True if written to the file; false if the write failed and was queued to be retried.
+     */
+    public boolean saveOrderBatch(Collection<ShippingOrder> orders) {
+        synchronized (ShippingOrderRepository.class) {
+            Map<String, String> rows = new LinkedHashMap<>();
+            int superseded = 0;
+            for (ShippingOrder order : orders) {
+                if (ordersById.containsKey(order.getOrderId())) {
+                    superseded++;
+                }
+                rows.put(order.getOrderId(), index(order).toCSV());
+            }
+            return append(rows, superseded);
+        }
+    }
+
+    /**
+     * Writes every pending order change to the file. Called at shutdown.
+     */
+    public static void flush() {
+        WriteBehindFile file;
+        synchronized (ShippingOrderRepository.class) {
+            file = ordersFile;
+        }
+        if (file != null) {
+            file.flush();
+        }
+    }
+
+    // ==========================
+    // Indexes
+    // ==========================
+
+    // Loads the file on first use; later repositories share the loaded orders
+    private static synchronized void loadOrders() {
+        if (ordersById != null) {
+            return;
+        }
+        ordersById = new LinkedHashMap<>();
+        // Parse on all cores, keeping file order
+        List<ShippingOrder> orders = FileUtils.scanParallel(FILE_PATH, ArrayList::new, (loaded, line) -> {
+            ShippingOrder order = ShippingOrder.fromCSV(line);
+            if (order != null) {
+                loaded.add(order);
+            }
+        }, (first, second) -> {
+            first.addAll(second);
+            return first;
+        });
+        for (ShippingOrder order : orders) {
+            index(order);
+        }
+        ordersFile = new WriteBehindFile(FILE_PATH, HEADER, ShippingOrderRepository::rowKey);
+    }
+
+    // Adds a copy of an order to the indexes and returns the copy. An order already indexed
+    // keeps its place, and only moves to the back of a bucket whose key (store or status) changed.
+    private static ShippingOrder index(ShippingOrder order) {
+        String orderId = order.getOrderId();
+        order = snapshot(order);
+        ordersById.put(orderId, order); // Replacing a key keeps its place
+
+        Integer oldStore = indexedStore.put(orderId, order.getStoreId());
+        if (oldStore != null && oldStore != order.getStoreId()) {
+            Map<String, ShippingOrder> storeOrders = ordersByStore.get(oldStore);
+            if (storeOrders != null) {
+                storeOrders.remove(orderId);
+            }
+        }
+        ordersByStore.computeIfAbsent(order.getStoreId(), id -> new LinkedHashMap<>()).put(orderId, order);
+
+        String status = statusKey(order.getStatus());
+        String oldStatus = indexedStatus.put(orderId, status);
+        if (oldStatus != null && !oldStatus.equals(status)) {
+            Map<String, ShippingOrder> statusOrders = ordersByStatus.get(oldStatus);
+            if (statusOrders != null) {
+                statusOrders.remove(orderId);
+            }
+        }
+        ordersByStatus.computeIfAbsent(status, s -> new LinkedHashMap<>()).put(orderId, order);
+        return order;
+    }
+
+    private static void unindex(String orderId) {
+        if (ordersById.remove(orderId) == null) {
+            return;
+        }
+        Integer storeId = indexedStore.remove(orderId);
+        Map<String, ShippingOrder> storeOrders = ordersByStore.get(storeId);
+        if (storeOrders != null) {
+            storeOrders.remove(orderId);
+        }
+        String status = indexedStatus.remove(orderId);
+        Map<String, ShippingOrder> statusOrders = ordersByStatus.get(status);
+        if (statusOrders != null) {
+            statusOrders.remove(orderId);
+        }
+    }
+
+    private static String statusKey(String status) {
+        return status == null ? "" : status.trim().toLowerCase();
+    }
+
+    // Copies of the orders, in index order
+    private static List<ShippingOrder> snapshots(Map<String, ShippingOrder> orders) {
+        List<ShippingOrder> copies = new ArrayList<>(orders == null ? 0 : orders.size());
+        if (orders != null) {
+            for (ShippingOrder order : orders.values()) {
+                copies.add(snapshot(order));
+            }
+        }
+        return copies;
+    }
+
+    // A separate order with its own item map, so callers never change the stored order
+    private static ShippingOrder snapshot(ShippingOrder order) {
+        return new ShippingOrder(order.getOrderId(), order.getStoreId(), order.getCustomerFirstName(),
+                order.getCustomerLastName(), order.getItems() == null ? null : new LinkedHashMap<>(order.getItems()),
+                order.getTotalPrice(), order.getShippingAddress(), order.getCustomerEmail(),
+                order.getCustomerPhoneNumber(), order.getOrderDate(), order.getStatus());
+    }
+
+    private static boolean append(ShippingOrder order, int superseded) {
+        Map<String, String> rows = new LinkedHashMap<>();
+        rows.put(order.getOrderId(), order.toCSV());
+        return append(rows, superseded);
+    }
+
+    // Appends the rows, and has the file compacted once enough of its rows are superseded
+    private static boolean append(Map<String, String> rows, int superseded) {
+        boolean appended = ordersFile.appendAll(rows);
+        staleRows += superseded;
+        if (staleRows >= Math.max(COMPACT_MIN_ROWS, ordersById.size())) {
+            staleRows = 0;
+            ordersFile.requestRewrite();
+        }
+        return appended;
+    }
+
+    private static String rowKey(String line) {
+        int separator = line.indexOf('|');
+        return separator <= 0 ? null : line.substring(0, separator); // orderId
+    }
 }
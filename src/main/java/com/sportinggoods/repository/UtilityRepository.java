@@ -6,40 +6,296 @@ import com.sportinggoods.util.FileUtils;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
+/**
+ * Utilities are read from and written back to the file on every change. Bulk updates
+ * apply to any number of utilities with a single read and write.
+ *
+ * Energy readings are the exception: they arrive far more often than anything else
+ * changes, so they are kept in memory, latest per utility, and written in batches.
+ * A status change made on the strength of a reading, such as an outage, is batched
+ * with them. Reads see pending readings and statuses as if they were already saved.
+ *
+ * Settings (system properties):
+ * - utilities.parallelThreshold: utilities a bulk update needs before it is spread
+ *   across cores (default 10000)
+ * - utilities.readingBatchSize: pending readings that trigger a write (default 64)
+ * - utilities.readingFlushMs: longest time a reading stays in memory only; this bounds
+ *   what a crash can lose (default 1000)
+ */
 public class UtilityRepository {
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("utilities.parallelThreshold", 10_000);
+    private static final int READING_BATCH_SIZE = Math.max(1, Integer.getInteger("utilities.readingBatchSize", 64));
+    private static final long READING_FLUSH_MS = Long.getLong("utilities.readingFlushMs", 1000L);
     private final String filePath = "data/utilities.csv";
 
+    // Energy readings of every utility, shared by all repositories; seeded from the file once
+    private static final EnergyTimeSeries energySeries = new EnergyTimeSeries();
+    private static boolean energySeriesLoaded;
+
+    // Latest unsaved reading and status per utility, by key; an entry is only removed once the file holds it
+    private static final Map<String, Reading> pendingReadings = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService readingFlusher;
+    private static UtilityRepository readingOwner; // Writes the pending readings out
+
+    private static final class Reading {
+        private final double energyConsumption; // NaN if only the status changed
+        private final LocalDateTime time;
+        private final String status; // Null if unchanged
+
+        private Reading(double energyConsumption, LocalDateTime time, String status) {
+            this.energyConsumption = energyConsumption;
+            this.time = time;
+            this.status = status;
+        }
+
+        // This change on top of an earlier unsaved one, keeping whatever this one leaves unchanged
+        private Reading after(Reading earlier) {
+            return Double.isNaN(energyConsumption)
+                    ? new Reading(earlier.energyConsumption, earlier.time, status)
+                    : new Reading(energyConsumption, time, status != null ? status : earlier.status);
+        }
+    }
+
+    /**
+     * Outcome of a bulk update.
+     */
+    public static class BulkUpdateResult {
+        private final int matched;
+        private final int changed;
+        private final long elapsedNanos;
+        private final boolean saved;
+
+        private BulkUpdateResult(int matched, int changed, long elapsedNanos, boolean saved) {
+            this.matched = matched;
+            this.changed = changed;
+            this.elapsedNanos = elapsedNanos;
+            this.saved = saved;
+        }
+
+        public int getMatched() { return matched; }
+        public int getChanged() { return changed; }
+        public double getElapsedMillis() { return elapsedNanos / 1_000_000.0; }
+        public boolean isSaved() { return saved; }
+
+        @Override
+        public String toString() {
+            return String.format("%d utilities matched, %d changed in %.1f ms%s",
+                    matched, changed, getElapsedMillis(), saved ? "" : " (not saved)");
+        }
+    }
+
     public UtilityRepository() {
         FileUtils.initializeFile(filePath, "utilityId,storeId,name,status,energyConsumption,lastUpdated,schedule");
+        loadEnergySeries();
+    }
+
+    // Each utility's last saved reading is its starting point
+    private void loadEnergySeries() {
+        synchronized (UtilityRepository.class) {
+            if (energySeriesLoaded) {
+                return;
+            }
+            for (Utility utility : getAllUtilities()) {
+                if (utility != null && utility.getLastUpdated() != null) {
+                    energySeries.record(utility.getUtilityId(), utility.getStoreId(), utility.getLastUpdated(), utility.getEnergyConsumption());
+                }
+            }
+            energySeriesLoaded = true;
+        }
     }
 
     public boolean addUtility(Utility utility) {
-        List<Utility> utilities = getAllUtilities();
-        utilities.add(utility);
-        return saveUtilitiesToFile(utilities);
+        synchronized (UtilityRepository.class) {
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            utilities.add(utility);
+            return saveUtilitiesToFile(utilities, readings);
+        }
     }
 
     public boolean updateUtilityField(String utilityId, int storeId, Consumer<Utility> updateFunction) {
-        List<Utility> utilities = getAllUtilities();
-        for (Utility utility : utilities) {
-            if (utility.getUtilityId().equals(utilityId) && utility.getStoreId() == storeId) {
-                updateFunction.accept(utility);
-                return saveUtilitiesToFile(utilities);
+        synchronized (UtilityRepository.class) {
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            for (Utility utility : utilities) {
+                if (utility.getUtilityId().equals(utilityId) && utility.getStoreId() == storeId) {
+                    updateFunction.accept(utility);
+                    return saveUtilitiesToFile(utilities, readings);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Applies many updates with one read and one write of the file, rather than one of
+     * each per utility.
+     *
+     * @param updates Update per utility, keyed by {@link #key(String, int)}.
+     * @return The number of utilities the updates changed, or -1 if they could not be
+     *         saved; the file is only written if there is at least one.
+     */
+    public int updateUtilityFields(Map<String, Consumer<Utility>> updates) {
+        synchronized (UtilityRepository.class) {
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            int changed = 0;
+            utilities.removeIf(utility -> utility == null); // Unreadable rows
+            for (Utility utility : utilities) {
+                Consumer<Utility> update = updates.get(key(utility.getUtilityId(), utility.getStoreId()));
+                if (update != null) {
+                    String before = utility.toCSV();
+                    update.accept(utility);
+                    if (!before.equals(utility.toCSV())) {
+                        changed++;
+                    }
+                }
+            }
+            if (changed > 0 && !saveUtilitiesToFile(utilities, readings)) {
+                return -1;
             }
+            return changed;
         }
-        return false;
+    }
+
+    /**
+     * @return The key of a utility for {@link #updateUtilityFields(Map)}; utility IDs are
+     *         only unique within a store.
+     */
+    public static String key(String utilityId, int storeId) {
+        return utilityId + "|" + storeId;
     }
 
     public boolean updateUtilityStatus(String utilityId, int storeId, String status) {
         return updateUtilityField(utilityId, storeId, utility -> utility.setStatus(status));
     }
 
+    /**
+     * Saves a new energy reading and adds it to the utility's time series.
+     */
     public boolean updateEnergyConsumption(String utilityId, int storeId, double energyConsumption) {
-        return updateUtilityField(utilityId, storeId, utility -> utility.setEnergyConsumption(energyConsumption));
+        return recordEnergyReading(utilityId, storeId, energyConsumption) != null;
+    }
+
+    /**
+     * Saves a new energy reading and adds it to the utility's time series. The reading is
+     * written to the file with the next batch.
+     *
+     * @return The utility with the reading applied, or null if there is no such utility.
+     */
+    public Utility recordEnergyReading(String utilityId, int storeId, double energyConsumption) {
+        Utility utility = getUtilityByIdAndStoreId(utilityId, storeId);
+        if (utility == null) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        utility.setEnergyConsumption(energyConsumption);
+        utility.setLastUpdated(now);
+        pendingReadings.merge(key(utilityId, storeId), new Reading(energyConsumption, now, null), (earlier, reading) -> reading.after(earlier));
+        energySeries.record(utilityId, storeId, now, energyConsumption);
+        queued();
+        return utility;
+    }
+
+    /**
+     * Sets a utility's status with the next batch of readings rather than rewriting the
+     * file straight away, for status changes made while handling a reading.
+     */
+    public void queueStatusChange(String utilityId, int storeId, String status) {
+        pendingReadings.merge(key(utilityId, storeId), new Reading(Double.NaN, null, status), (earlier, change) -> change.after(earlier));
+        queued();
+    }
+
+    private void queued() {
+        startReadingFlusher();
+        if (pendingReadings.size() >= READING_BATCH_SIZE) {
+            flushReadings();
+        }
+    }
+
+    /**
+     * Writes pending energy readings and status changes to the file. Called at shutdown.
+     */
+    public static void flush() {
+        UtilityRepository owner;
+        synchronized (UtilityRepository.class) {
+            owner = readingOwner;
+        }
+        if (owner != null) {
+            owner.flushReadings();
+        }
+    }
+
+    private void startReadingFlusher() {
+        synchronized (UtilityRepository.class) {
+            if (readingOwner != null) {
+                return;
+            }
+            readingOwner = this;
+            if (READING_FLUSH_MS > 0) {
+                readingFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "utility-readings");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                readingFlusher.scheduleWithFixedDelay(this::flushReadings, READING_FLUSH_MS, READING_FLUSH_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // One read and one write for every reading that came in since the last batch
+    private void flushReadings() {
+        synchronized (UtilityRepository.class) {
+            if (pendingReadings.isEmpty()) {
+                return;
+            }
+            Map<String, Reading> batch = new HashMap<>(pendingReadings);
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            utilities.removeIf(Objects::isNull); // Unreadable rows
+            if (readings.isEmpty() || saveUtilitiesToFile(utilities, readings)) {
+                batch.forEach(pendingReadings::remove); // Including readings of utilities deleted since
+            } else {
+                System.err.println("Error saving energy readings; " + batch.size() + " will be retried.");
+            }
+        }
+    }
+
+    /**
+     * @return The utility's energy readings over the window ending now, or null if it has none.
+     */
+    public EnergyTimeSeries.Stats getEnergyStats(String utilityId, int storeId, Duration window) {
+        return energySeries.getUtilityStats(utilityId, storeId, window);
+    }
+
+    /**
+     * @return The store's energy readings over the window ending now, or null if it has none.
+     */
+    public EnergyTimeSeries.Stats getStoreEnergyStats(int storeId, Duration window) {
+        return energySeries.getStoreStats(storeId, window);
+    }
+
+    /**
+     * @return The stores that used the most energy over the window ending now, most first.
+     */
+    public List<EnergyTimeSeries.StoreUsage> getTopConsumingStores(int limit, Duration window) {
+        return energySeries.getTopStores(limit, window);
     }
 
     public boolean updateUtilitySchedule(String utilityId, int storeId, String schedule) {
@@ -47,45 +303,118 @@ public class UtilityRepository {
     }
 
     public Utility getUtilityById(String utilityId) {
-        return getAllUtilities().stream()
-                .filter(utility -> utility.getUtilityId().equals(utilityId))
-                .findFirst()
-                .orElse(null);
+        // Stops reading at the first match
+        try (Stream<String> utilities = streamUtilities()) {
+            return utilities.filter(line -> line.startsWith(utilityId + ",")) // Only parse matching rows
+                    .map(Utility::fromCSV)
+                    .filter(utility -> utility != null && utility.getUtilityId().equals(utilityId))
+                    .findFirst()
+                    .map(utility -> withPendingReading(utility, null))
+                    .orElse(null);
+        }
     }
 
     public Utility getUtilityByIdAndStoreId(String utilityId, int storeId) {
-        return getAllUtilities().stream()
-                .filter(utility -> utility.getUtilityId().equals(utilityId) && utility.getStoreId() == storeId)
-                .findFirst()
-                .orElse(null);
+        try (Stream<String> utilities = streamUtilities()) {
+            return utilities.filter(line -> line.startsWith(utilityId + ","))
+                    .map(Utility::fromCSV)
+                    .filter(utility -> utility != null && utility.getUtilityId().equals(utilityId) && utility.getStoreId() == storeId)
+                    .findFirst()
+                    .map(utility -> withPendingReading(utility, null))
+                    .orElse(null);
+        }
     }
 
     public List<Utility> getUtilitiesByStoreId(int storeId) {
-        return getAllUtilities().stream()
-                .filter(utility -> utility.getStoreId() == storeId)
-                .toList();
+        try (Stream<String> utilities = streamUtilities()) {
+            return utilities.map(Utility::fromCSV)
+                    .filter(utility -> utility != null && utility.getStoreId() == storeId)
+                    .map(utility -> withPendingReading(utility, null))
+                    .toList();
+        }
+    }
+
+    // Lines holding a utility, skipping blanks and repeated headers
+    private Stream<String> streamUtilities() {
+        return FileUtils.lines(filePath)
+                .filter(line -> !line.trim().isEmpty() && !line.startsWith("utilityId"));
     }
 
     public List<Utility> getAllUtilities() {
+        return getAllUtilities(null);
+    }
+
+    // Every utility with its latest reading; the pending readings used are added to applied, if given
+    private List<Utility> getAllUtilities(Map<String, Reading> applied) {
         List<Utility> utilities = new ArrayList<>();
         List<String> lines = FileUtils.readAllLines(filePath);
         for (String line : lines) {
             if (!line.trim().isEmpty() && !line.startsWith("utilityId")) {
-                utilities.add(Utility.fromCSV(line));
+                Utility utility = Utility.fromCSV(line);
+                utilities.add(utility == null ? null : withPendingReading(utility, applied));
             }
         }
         return utilities;
     }
 
+    private static Utility withPendingReading(Utility utility, Map<String, Reading> applied) {
+        String key = key(utility.getUtilityId(), utility.getStoreId());
+        Reading reading = pendingReadings.get(key);
+        if (reading != null) {
+            if (!Double.isNaN(reading.energyConsumption)) {
+                utility.setEnergyConsumption(reading.energyConsumption);
+                utility.setLastUpdated(reading.time);
+            }
+            if (reading.status != null) {
+                utility.setStatus(reading.status);
+            }
+            if (applied != null) {
+                applied.put(key, reading);
+            }
+        }
+        return utility;
+    }
+
     public boolean deleteUtility(String utilityId) {
-        List<Utility> utilities = getAllUtilities();
-        boolean found = utilities.removeIf(utility -> utility.getUtilityId().equals(utilityId));
-        return found && saveUtilitiesToFile(utilities);
+        synchronized (UtilityRepository.class) {
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            boolean found = utilities.removeIf(utility -> utility.getUtilityId().equals(utilityId));
+            return found && saveUtilitiesToFile(utilities, readings);
+        }
+    }
+
+    /**
+     * Applies a change to every utility matching a filter, with one read and one write of
+     * the file. Large updates are spread across cores, so the filter and change must only
+     * touch the utility they are given.
+     *
+     * @return How many utilities matched and changed, and how long it took. The file is
+     *         only written if something changed.
+     */
+    public BulkUpdateResult updateUtilitiesWhere(Predicate<Utility> filter, Consumer<Utility> change) {
+        long start = System.nanoTime();
+        synchronized (UtilityRepository.class) {
+            Map<String, Reading> readings = new HashMap<>();
+            List<Utility> utilities = getAllUtilities(readings);
+            utilities.removeIf(Objects::isNull); // Unreadable rows
+            LongAdder matched = new LongAdder();
+            Stream<Utility> stream = utilities.size() >= PARALLEL_THRESHOLD ? utilities.parallelStream() : utilities.stream();
+            int changed = stream.filter(filter)
+                    .mapToInt(utility -> {
+                        matched.increment();
+                        String before = utility.toCSV();
+                        change.accept(utility);
+                        return before.equals(utility.toCSV()) ? 0 : 1;
+                    })
+                    .sum();
+            boolean saved = changed == 0 || saveUtilitiesToFile(utilities, readings);
+            return new BulkUpdateResult(matched.intValue(), changed, System.nanoTime() - start, saved);
+        }
     }
 
-    public void applySeasonalPreset(String season) {
-        List<Utility> utilities = getAllUtilities();
-        utilities.forEach(utility -> {
+    public BulkUpdateResult applySeasonalPreset(String season) {
+        return updateUtilitiesWhere(utility -> true, utility -> {
             if ("Winter".equalsIgnoreCase(season)) {
                 utility.setEnergyConsumption(800);
             } else if ("Summer".equalsIgnoreCase(season)) {
@@ -93,10 +422,10 @@ public class UtilityRepository {
             }
             utility.setStatus("Active");
         });
-        saveUtilitiesToFile(utilities);
     }
 
-    private boolean saveUtilitiesToFile(List<Utility> utilities) {
+    // Writes the utilities, and drops the pending readings they were read with since the file now has them
+    private boolean saveUtilitiesToFile(List<Utility> utilities, Map<String, Reading> readings) {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
             writer.write("utilityId,storeId,name,status,energyConsumption,lastUpdated,schedule");
             writer.newLine();
@@ -104,6 +433,8 @@ public class UtilityRepository {
                 writer.write(utility.toCSV());
                 writer.newLine();
             }
+            writer.flush();
+            readings.forEach(pendingReadings::remove);
             return true;
         } catch (IOException e) {
             System.err.println("Error saving utilities to file: " + e.getMessage());
@@ -0,0 +1,332 @@
+package com.sportinggoods.util;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Splits one CSV line into fields without regexes or per-field Strings.
+ * {@link #reset(String)} only records where each field starts and ends; numbers and
+ * dates are parsed straight from the line's characters, and a String is created only
+ * when {@link #getString(int)} is called. Quoted fields follow RFC 4180: a field that
+ * starts with a quote may contain the delimiter, and "" inside it stands for one quote.
+ * Numeric and date fields may be surrounded by spaces.
+ *
+ * Instances are reused line after line and are not thread-safe; {@link #of(String)}
+ * hands out one per thread.
+ */
+public final class CsvTokenizer {
+    private static final ThreadLocal<CsvTokenizer> COMMA = ThreadLocal.withInitial(() -> new CsvTokenizer(','));
+    private static final ThreadLocal<CsvTokenizer> PIPE = ThreadLocal.withInitial(() -> new CsvTokenizer('|'));
+    // Powers of ten that are exact doubles, for the fast decimal path
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final char delimiter;
+    private String line = "";
+    private int count;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16]; // Exclusive, and inside the quotes for quoted fields
+    private boolean[] quoted = new boolean[16];
+
+    public CsvTokenizer() {
+        this(',');
+    }
+
+    /**
+     * @param delimiter The field separator, e.g. ',' or '|'.
+     */
+    public CsvTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Tokenizes a comma-separated line with this thread's shared tokenizer.
+     * The result is only valid until the same thread tokenizes another line.
+     */
+    public static CsvTokenizer of(String line) {
+        return COMMA.get().reset(line);
+    }
+
+    /**
+     * Tokenizes a line with this thread's shared tokenizer for the delimiter.
+     * Comma and pipe tokenizers are separate, so a pipe-separated line can hold
+     * comma-separated fields that are tokenized while it is still in use.
+     */
+    public static CsvTokenizer of(String line, char delimiter) {
+        if (delimiter == ',') {
+            return COMMA.get().reset(line);
+        }
+        if (delimiter == '|') {
+            return PIPE.get().reset(line);
+        }
+        return new CsvTokenizer(delimiter).reset(line);
+    }
+
+    /**
+     * Quotes a field for a comma-separated line if it contains a comma or a quote, so
+     * {@link #getString(int)} reads it back unchanged. Other fields are returned as they are.
+     */
+    public static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Finds the fields of a new line. Every field is kept, including empty trailing ones.
+     *
+     * @param line The line to tokenize.
+     * @return This tokenizer.
+     */
+    public CsvTokenizer reset(String line) {
+        this.line = line;
+        count = 0;
+        int length = line.length();
+        int pos = 0;
+        while (true) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                quoted = Arrays.copyOf(quoted, count * 2);
+            }
+            if (pos < length && line.charAt(pos) == '"') {
+                // Quoted field: runs to the closing quote that is not part of a "" pair
+                int start = pos + 1;
+                int end = start;
+                while (end < length) {
+                    if (line.charAt(end) == '"') {
+                        if (end + 1 < length && line.charAt(end + 1) == '"') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                starts[count] = start;
+                ends[count] = end;
+                quoted[count] = true;
+                pos = line.indexOf(delimiter, Math.min(end + 1, length)); // Ignore stray text after the quote
+            } else {
+                int end = line.indexOf(delimiter, pos);
+                starts[count] = pos;
+                ends[count] = end < 0 ? length : end;
+                quoted[count] = false;
+                pos = end;
+            }
+            count++;
+            if (pos < 0) {
+                return this;
+            }
+            pos++; // Skip the delimiter
+        }
+    }
+
+    /**
+     * @return The number of fields in the line.
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isQuoted(int field) {
+        checkIndex(field);
+        return quoted[field];
+    }
+
+    public boolean isEmpty(int field) {
+        checkIndex(field);
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * @return The field's text, without the surrounding quotes and with "" turned into ".
+     */
+    public String getString(int field) {
+        checkIndex(field);
+        String value = line.substring(starts[field], ends[field]);
+        return quoted[field] && value.indexOf('"') >= 0 ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Parses an int field, like Integer.parseInt.
+     *
+     * @throws NumberFormatException If the field is not a valid int.
+     */
+    public int getInt(int field) {
+        long value = getLong(field);
+        if (value != (int) value) {
+            throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a long field, like Long.parseLong.
+     *
+     * @throws NumberFormatException If the field is not a valid long.
+     */
+    public long getLong(int field) {
+        checkIndex(field);
+        int pos = skipSpaces(starts[field], ends[field]);
+        int end = trimSpaces(pos, ends[field]);
+        boolean negative = false;
+        if (pos < end && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+        if (pos == end || end - pos > 18) {
+            return Long.parseLong(line.substring(starts[field], ends[field]).trim()); // Empty, or long enough to overflow
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = line.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a double field, like Double.parseDouble. Plain decimals with up to 15 significant
+     * digits are parsed directly and give exactly the same result; anything else (exponents,
+     * longer numbers, NaN) goes through Double.parseDouble.
+     *
+     * @throws NumberFormatException If the field is not a valid double.
+     */
+    public double getDouble(int field) {
+        checkIndex(field);
+        int pos = skipSpaces(starts[field], ends[field]);
+        int end = trimSpaces(pos, ends[field]);
+        boolean negative = false;
+        if (pos < end && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1; // -1 until the decimal point is seen
+        boolean hasDigit = false;
+        for (; pos < end; pos++) {
+            char c = line.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break; // Exponent or invalid character
+            }
+        }
+        if (pos < end || digits > 15 || fractionDigits >= POWERS_OF_TEN.length || !hasDigit) {
+            return Double.parseDouble(line.substring(starts[field], ends[field]));
+        }
+        // Both values are exact doubles, so one division gives the correctly rounded result
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an ISO date field (yyyy-MM-dd), like LocalDate.parse.
+     *
+     * @throws java.time.format.DateTimeParseException If the field is not a valid date.
+     */
+    public LocalDate getDate(int field) {
+        checkIndex(field);
+        int pos = skipSpaces(starts[field], ends[field]);
+        int end = trimSpaces(pos, ends[field]);
+        if (end - pos == 10 && line.charAt(pos + 4) == '-' && line.charAt(pos + 7) == '-') {
+            int year = digits(pos, 4);
+            int month = digits(pos + 5, 2);
+            int day = digits(pos + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return LocalDate.of(year, month, day);
+                } catch (DateTimeException e) {
+                    // Out of range; let LocalDate.parse report it
+                }
+            }
+        }
+        return LocalDate.parse(line.substring(pos, end));
+    }
+
+    /**
+     * Parses an ISO date-time field (yyyy-MM-ddTHH:mm[:ss[.fraction]]), like LocalDateTime.parse.
+     *
+     * @throws java.time.format.DateTimeParseException If the field is not a valid date-time.
+     */
+    public LocalDateTime getDateTime(int field) {
+        checkIndex(field);
+        int pos = skipSpaces(starts[field], ends[field]);
+        int end = trimSpaces(pos, ends[field]);
+        int length = end - pos;
+        if ((length == 16 || length == 19) && line.charAt(pos + 4) == '-' && line.charAt(pos + 7) == '-'
+                && line.charAt(pos + 10) == 'T' && line.charAt(pos + 13) == ':'
+                && (length == 16 || line.charAt(pos + 16) == ':')) {
+            int year = digits(pos, 4);
+            int month = digits(pos + 5, 2);
+            int day = digits(pos + 8, 2);
+            int hour = digits(pos + 11, 2);
+            int minute = digits(pos + 14, 2);
+            int second = length == 19 ? digits(pos + 17, 2) : 0;
+            if (year >= 0 && month >= 0 && day >= 0 && hour >= 0 && minute >= 0 && second >= 0) {
+                try {
+                    return LocalDateTime.of(year, month, day, hour, minute, second);
+                } catch (DateTimeException e) {
+                    // Out of range; let LocalDateTime.parse report it
+                }
+            }
+        }
+        return LocalDateTime.parse(line.substring(pos, end));
+    }
+
+    // Reads a fixed number of digits, or returns -1 if any character is not a digit
+    private int digits(int pos, int length) {
+        int value = 0;
+        for (int i = pos; i < pos + length; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private int skipSpaces(int pos, int end) {
+        while (pos < end && line.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int trimSpaces(int pos, int end) {
+        while (end > pos && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private void checkIndex(int field) {
+        if (field < 0 || field >= count) {
+            throw new IndexOutOfBoundsException("Field " + field + " out of bounds for length " + count);
+        }
+    }
+}
@@ -1,8 +1,21 @@
 package com.sportinggoods.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class FileUtils {
 
@@ -44,6 +57,245 @@ public class FileUtils {
         return lines;
     }
 
+    /**
+     * Streams the lines of a file, excluding the header, reading them only as they are consumed.
+     * Short-circuiting operations such as findFirst stop reading at the first match.
+     * The stream holds the file open, so close it (e.g. with try-with-resources).
+     *
+     * @param filePath The path to the file.
+     * @return The lines, or an empty stream if the file cannot be opened.
+     */
+    public static Stream<String> lines(String filePath) {
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new FileReader(filePath));
+            reader.readLine(); // Skip header
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filePath);
+            return Stream.empty();
+        }
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file: " + filePath);
+            }
+        });
+    }
+
+    /**
+     * Passes each line of a file, excluding the header, to a visitor until it returns false.
+     *
+     * @param filePath The path to the file.
+     * @param visitor  Called with each line; returns false to stop reading.
+     * @return True if the file was read (fully or until stopped), false on error.
+     */
+    public static boolean forEachLine(String filePath, Predicate<String> visitor) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            reader.readLine(); // Skip header
+            while ((line = reader.readLine()) != null) {
+                if (!visitor.test(line)) {
+                    break;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filePath);
+            return false;
+        }
+    }
+
+    // ==========================
+    // Buffered scans
+    // ==========================
+
+    // Bytes read from the file at a time; the buffer grows if a single line is longer
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+    // Longest line the scans accept
+    private static final int MAX_LINE_BYTES = 64 * 1024 * 1024;
+    // Files smaller than this per core are not worth splitting across threads
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * Passes the lines of a file to a visitor newest first, i.e. from the end of the file
+     * back to the line after the header, until it returns false. The file is read backwards
+     * a buffer at a time, so only the part that is actually visited is read from disk.
+     * Blank lines are skipped. Used for append-only files, where the newest rows are at the end.
+     *
+     * @param filePath The path to the file.
+     * @param visitor  Called with each line; returns false to stop reading.
+     * @return True if the file was read (fully or until stopped), false on error.
+     */
+    public static boolean forEachLineReverse(String filePath, Predicate<String> visitor) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long end = channel.size(); // Everything from here on has been visited
+            byte[] buffer = new byte[(int) Math.max(1, Math.min(READ_BUFFER_BYTES, end))];
+            while (end > 0) {
+                long start = Math.max(0, end - buffer.length);
+                int length = (int) (end - start);
+                readFully(channel, buffer, start, 0, length);
+                int lineEnd = length;
+                for (int i = lineEnd - 1; i >= 0; i--) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    if (i + 1 < lineEnd) {
+                        String line = decodeLine(buffer, i + 1, lineEnd);
+                        if (!line.isEmpty() && !visitor.test(line)) {
+                            return true;
+                        }
+                    }
+                    lineEnd = i;
+                }
+                if (start == 0) {
+                    break; // What is left is the header
+                }
+                if (lineEnd == length) {
+                    // No line break in the whole buffer: read the line again with a bigger one
+                    if (buffer.length >= MAX_LINE_BYTES) {
+                        System.err.println("Error reading file, line too long: " + filePath);
+                        return false;
+                    }
+                    buffer = new byte[Math.min(MAX_LINE_BYTES, buffer.length * 2)];
+                    continue;
+                }
+                end = start + lineEnd; // Read the next buffer so it ends with the unfinished line
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filePath);
+            return false;
+        }
+    }
+
+    /**
+     * Scans a file on several threads. The file is cut into chunks that start and end on
+     * line boundaries; each chunk is read a buffer at a time and folded into its own
+     * accumulator, and the accumulators are combined in file order. Blank lines and the
+     * header are skipped.
+     *
+     * @param filePath    The path to the file.
+     * @param supplier    Creates an empty accumulator for a chunk.
+     * @param accumulator Adds one line to an accumulator. Called concurrently for different chunks.
+     * @param combiner    Merges the accumulator of a later chunk into an earlier one.
+     * @return The combined result, or an empty accumulator if the file cannot be read.
+     */
+    public static <A> A scanParallel(String filePath, Supplier<A> supplier, BiConsumer<A, String> accumulator,
+                                     BinaryOperator<A> combiner) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_CHUNK_BYTES));
+
+            // Move each nominal boundary forward to the start of the next line
+            long[] bounds = new long[(int) chunks + 1];
+            bounds[(int) chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks));
+            }
+
+            return IntStream.range(0, (int) chunks).parallel()
+                    .mapToObj(i -> {
+                        A result = supplier.get();
+                        scanChunk(channel, bounds[i], bounds[i + 1], i == 0, line -> accumulator.accept(result, line));
+                        return result;
+                    })
+                    .reduce(combiner)
+                    .orElseGet(supplier);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error reading file: " + filePath);
+            return supplier.get();
+        }
+    }
+
+    // Returns the offset just after the first newline at or after position - 1
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long offset = Math.max(0, position - 1);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static void scanChunk(FileChannel channel, long start, long end, boolean skipHeader, Consumer<String> lineConsumer) {
+        if (end <= start) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[(int) Math.min(READ_BUFFER_BYTES, end - start)];
+            long position = start; // File offset of buffer[0]
+            int filled = 0;
+            boolean header = skipHeader;
+            while (true) {
+                int length = (int) Math.min(buffer.length - filled, end - position - filled);
+                readFully(channel, buffer, position + filled, filled, length);
+                filled += length;
+                boolean last = position + filled == end;
+                int lineStart = 0;
+                for (int i = 0; i <= filled; i++) {
+                    // The end of the chunk ends its last line; the end of the buffer does not
+                    if (i < filled ? buffer[i] != '\n' : !last) {
+                        continue;
+                    }
+                    if (header) {
+                        header = false;
+                    } else if (i > lineStart) {
+                        String line = decodeLine(buffer, lineStart, i);
+                        if (!line.isEmpty()) {
+                            lineConsumer.accept(line);
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+                if (last) {
+                    return;
+                }
+                if (lineStart == 0) {
+                    // No line break in the whole buffer: grow it to take the rest of the line
+                    if (buffer.length >= MAX_LINE_BYTES) {
+                        throw new IOException("Line too long at offset " + position);
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(Math.min(MAX_LINE_BYTES, buffer.length * 2L), end - position));
+                } else {
+                    // Carry the unfinished line over to the front of the buffer
+                    System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                    position += lineStart;
+                    filled -= lineStart;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads length bytes at the file position into buffer[offset, offset + length)
+    private static void readFully(FileChannel channel, byte[] buffer, long position, int offset, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position() - offset) < 0) {
+                throw new EOFException("File shrank while it was being read");
+            }
+        }
+    }
+
+    // Decodes bytes[start, end) as UTF-8, dropping a trailing carriage return
+    private static String decodeLine(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
     /**
      * Appends a line to a file.
      *
@@ -0,0 +1,63 @@
+package com.sportinggoods.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out increasing IDs from an in-memory counter.
+ * The counter starts at a high-water mark recovered once (e.g. from the end of a file),
+ * so allocating an ID never has to read the file again. Safe to share between threads.
+ */
+public class IdAllocator {
+    private final AtomicLong lastId;
+
+    /**
+     * @param highWaterMark The highest ID already in use; the first ID handed out is one above it.
+     */
+    public IdAllocator(long highWaterMark) {
+        this.lastId = new AtomicLong(highWaterMark);
+    }
+
+    /**
+     * @return The next unused ID.
+     */
+    public long next() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Reserves a range of IDs for one caller, e.g. a single register, so it only touches
+     * the shared counter once per block. IDs left unused in a block are skipped.
+     *
+     * @param blockSize The number of IDs to take from the shared counter at a time.
+     * @return A block that refills itself from this allocator when it runs out.
+     */
+    public IdBlock reserveBlock(int blockSize) {
+        return new IdBlock(this, Math.max(1, blockSize));
+    }
+
+    /**
+     * A range of IDs owned by one caller.
+     */
+    public static class IdBlock {
+        private final IdAllocator allocator;
+        private final int blockSize;
+        private long nextId;
+        private long endId; // Exclusive
+
+        private IdBlock(IdAllocator allocator, int blockSize) {
+            this.allocator = allocator;
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * @return The next ID in this block, reserving a new block first if needed.
+         */
+        public synchronized long next() {
+            if (nextId == endId) {
+                endId = allocator.lastId.addAndGet(blockSize) + 1;
+                nextId = endId - blockSize;
+            }
+            return nextId++;
+        }
+    }
+}
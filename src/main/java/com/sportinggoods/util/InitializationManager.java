@@ -22,6 +22,7 @@ public class InitializationManager {
     private ShippingController shippingController;
     private SupplierController supplierController;
     private UtilityController utilityController;
+    private UtilityScheduler utilityScheduler;
     private MaintenanceRequestController maintenanceRequestController;
     private AppointmentController appointmentController;
     private FeedbackController feedbackController;
@@ -101,8 +102,10 @@ public class InitializationManager {
         registerController = new RegisterController(register);
         shippingController = new ShippingController(shippingOrderRepo);
         supplierController = new SupplierController(supplierRepo, supplierOrderRepo);
-        utilityController = new UtilityController(utilityRepo);
         maintenanceRequestController = new MaintenanceRequestController(maintenanceRequestRepo);
+        utilityScheduler = new UtilityScheduler(utilityRepo);
+        utilityScheduler.start();
+        utilityController = new UtilityController(utilityRepo, utilityScheduler, maintenanceRequestController);
         feedbackController = new FeedbackController(feedbackRepo);
         appointmentController = new AppointmentController(appointmentRepo);
         employeeController = new EmployeeController(employeeRepo);
@@ -268,6 +271,14 @@ public class InitializationManager {
      * Shuts down and releases resources.
      */
     public void shutdown() {
+        Inventory.flush(); // Write out any pending inventory changes
+        ShippingOrderRepository.flush();
+        AppointmentRepository.flush();
+        MaintenanceRequestRepository.flush();
+        UtilityRepository.flush();
+        if (utilityScheduler != null) {
+            utilityScheduler.stop();
+        }
         if (scanner != null) {
             scanner.close();
         }
@@ -0,0 +1,229 @@
+package com.sportinggoods.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of inventory quantity changes.
+ * Each record is one line: name,storeID,quantityChange,txnId.
+ * The inventory snapshot plus the journal gives the current quantities; once the
+ * journal grows past its size limit it is folded into a new snapshot and truncated.
+ * The snapshot records the txnId of the last record it folded, so if the process stops
+ * between writing the snapshot and truncating, replay skips the records already in it.
+ *
+ * Settings (system properties):
+ * - inventory.journal.maxBytes: journal size that triggers compaction (default 262144)
+ */
+public class InventoryJournal {
+    private static final String HEADER = "name,storeID,quantityChange,txnId";
+    private static final long MAX_BYTES = Long.getLong("inventory.journal.maxBytes", 256 * 1024L);
+
+    private final String filePath;
+    private final long maxBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong lastTxnId = new AtomicLong();
+    private volatile long bytes;
+    private volatile long lastRecordTxnId; // txnId of the last record in the file; 0 if it is empty
+
+    public InventoryJournal(String filePath) {
+        this(filePath, MAX_BYTES);
+    }
+
+    public InventoryJournal(String filePath, long maxBytes) {
+        this.filePath = filePath;
+        this.maxBytes = maxBytes;
+        FileUtils.initializeFile(filePath, HEADER);
+        bytes = new File(filePath).length();
+
+        // Never hand out a txnId already in the journal, even if the clock went backwards
+        long maxTxnId = System.currentTimeMillis();
+        CsvTokenizer parts = new CsvTokenizer();
+        for (String line : FileUtils.readAllLines(filePath)) {
+            parts.reset(line);
+            if (parts.size() == 4) {
+                try {
+                    lastRecordTxnId = parts.getLong(3);
+                    maxTxnId = Math.max(maxTxnId, lastRecordTxnId);
+                } catch (NumberFormatException e) {
+                    // Skip torn or invalid records
+                }
+            }
+        }
+        lastTxnId.set(maxTxnId);
+    }
+
+    /**
+     * @return A new transaction ID, unique within this journal.
+     */
+    public long nextTxnId() {
+        return lastTxnId.incrementAndGet();
+    }
+
+    /**
+     * Makes sure txnIds handed out from now on are above the given one, e.g. the last
+     * txnId folded into a snapshot after the journal that held it was truncated.
+     */
+    public void reserveTxnIdsThrough(long txnId) {
+        lastTxnId.accumulateAndGet(txnId, Math::max);
+    }
+
+    /**
+     * @return The txnId of the last record in the journal, or 0 if it is empty. Only stable
+     *         while the journal is locked.
+     */
+    public long getLastRecordTxnId() {
+        return lastRecordTxnId;
+    }
+
+    /**
+     * Blocks appends and compaction. Callers hold the lock while changing the in-memory
+     * quantity and appending its record, so a compaction never sees one without the other.
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Appends a quantity change record.
+     *
+     * @param itemName       The item name.
+     * @param storeID        The store the item belongs to.
+     * @param quantityChange The change in quantity (can be positive or negative).
+     * @param txnId          The transaction the change belongs to.
+     * @return True if successful, false otherwise.
+     */
+    public boolean append(String itemName, int storeID, int quantityChange, long txnId) {
+        return append(List.of(record(itemName, storeID, quantityChange, txnId)));
+    }
+
+    /**
+     * Appends several records in a single write, e.g. every line of one sale.
+     *
+     * @param records Records built with {@link #record(String, int, int, long)}.
+     * @return True if successful, false otherwise.
+     */
+    public boolean append(List<String> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        String lines = String.join(System.lineSeparator(), records);
+        lock.lock();
+        try {
+            if (!FileUtils.appendToFile(filePath, lines)) {
+                return false;
+            }
+            // Encoded size, as the writer stores it, so it adds up with the file length
+            bytes += lines.getBytes(Charset.defaultCharset()).length + System.lineSeparator().length();
+            String last = records.get(records.size() - 1);
+            try {
+                lastRecordTxnId = Long.parseLong(last.substring(last.lastIndexOf(',') + 1));
+            } catch (NumberFormatException e) {
+                // Not built with record(); leave the last known txnId
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Formats one journal record.
+     */
+    public static String record(String itemName, int storeID, int quantityChange, long txnId) {
+        return itemName + "," + storeID + "," + (quantityChange >= 0 ? "+" : "") + quantityChange + "," + txnId;
+    }
+
+    /**
+     * Sums the journal into one net change per item.
+     *
+     * @return A map from "name:storeID" to the net quantity change.
+     */
+    public Map<String, Integer> netChanges() {
+        return netChanges(0);
+    }
+
+    /**
+     * Sums the journal into one net change per item, leaving out the records a snapshot
+     * has already folded in.
+     *
+     * @param foldedThroughTxnId The txnId of the last record the snapshot folded, or 0.
+     *                           If the journal still holds that record, it and every
+     *                           record before it are skipped.
+     * @return A map from "name:storeID" to the net quantity change.
+     */
+    public Map<String, Integer> netChanges(long foldedThroughTxnId) {
+        Map<String, Integer> changes = new HashMap<>();
+        lock.lock();
+        try {
+            CsvTokenizer parts = new CsvTokenizer();
+            List<String> lines = FileUtils.readAllLines(filePath);
+            int first = 0;
+            if (foldedThroughTxnId != 0) {
+                // Records are appended in file order, and txnIds are never reused, so the
+                // folded records are the ones up to the last with the folded txnId
+                for (int i = lines.size() - 1; i >= 0; i--) {
+                    parts.reset(lines.get(i));
+                    if (parts.size() == 4 && txnIdOf(parts) == foldedThroughTxnId) {
+                        first = i + 1;
+                        break;
+                    }
+                }
+            }
+            for (String line : lines.subList(first, lines.size())) {
+                parts.reset(line);
+                if (parts.size() != 4) {
+                    continue; // Skip torn or invalid records
+                }
+                try {
+                    int storeID = parts.getInt(1);
+                    int quantityChange = parts.getInt(2);
+                    changes.merge(parts.getString(0) + ":" + storeID, quantityChange, Integer::sum);
+                } catch (NumberFormatException e) {
+                    // Skip torn or invalid records
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return changes;
+    }
+
+    private static long txnIdOf(CsvTokenizer parts) {
+        try {
+            return parts.getLong(3);
+        } catch (NumberFormatException e) {
+            return 0; // Torn or invalid record
+        }
+    }
+
+    /**
+     * @return True once the journal has grown past its size limit.
+     */
+    public boolean needsCompaction() {
+        return bytes > maxBytes;
+    }
+
+    /**
+     * Empties the journal. Only call after its records are part of a written snapshot.
+     */
+    public void truncate() {
+        lock.lock();
+        try {
+            if (FileUtils.writeAllLines(filePath, List.of(HEADER))) {
+                bytes = new File(filePath).length();
+                lastRecordTxnId = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.sportinggoods.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel: one background thread runs any number of one-shot timers.
+ * Time is cut into ticks; each timer goes into the wheel slot of the tick it is due in,
+ * with a count of how many more turns of the wheel to wait. Every tick the thread only
+ * looks at one slot, so scheduling and cancelling are O(1) however many timers are
+ * pending. Timers fire up to one tick late, never early.
+ *
+ * Timer tasks run on the wheel's thread and should be short; an exception thrown by a
+ * task is reported and does not stop the wheel.
+ */
+public class TimingWheel {
+    // Timers moved into the wheel per tick, so a flood of new timers cannot stall expiry
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final String name;
+    private final long tickNanos;
+    private final Slot[] wheel;
+    private final int mask;
+
+    // Other threads hand new and cancelled timers to the wheel thread through these queues
+    private final Queue<Timer> pendingTimers = new ConcurrentLinkedQueue<>();
+    private final Queue<Timer> cancelledTimers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private static final int NEW = 0, STARTED = 1, STOPPED = 2;
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startTime;
+    private long tick; // Only touched by the wheel thread
+
+    /**
+     * A scheduled task, which can be cancelled until it fires.
+     */
+    public static final class Timer {
+        private static final int WAITING = 0, CANCELLED = 1, EXPIRED = 2;
+
+        private final TimingWheel timingWheel;
+        private final Runnable task;
+        private final long deadline; // Nanoseconds since the wheel started
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private long remainingRounds;
+        private Timer next;
+        private Timer previous;
+        private Slot slot;
+
+        private Timer(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return True if the timer was cancelled, false if it had already fired or been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            timingWheel.cancelledTimers.add(this); // Unlinked by the wheel thread
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error running timer task in " + timingWheel.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // One slot of the wheel: a doubly linked list, so a timer can be unlinked in O(1)
+    private static final class Slot {
+        private Timer head;
+        private Timer tail;
+
+        private void add(Timer timer) {
+            timer.slot = this;
+            if (head == null) {
+                head = tail = timer;
+            } else {
+                tail.next = timer;
+                timer.previous = tail;
+                tail = timer;
+            }
+        }
+
+        private Timer remove(Timer timer) {
+            Timer next = timer.next;
+            if (timer.previous != null) {
+                timer.previous.next = next;
+            }
+            if (next != null) {
+                next.previous = timer.previous;
+            }
+            if (timer == head) {
+                head = next;
+            }
+            if (timer == tail) {
+                tail = timer.previous;
+            }
+            timer.previous = null;
+            timer.next = null;
+            timer.slot = null;
+            return next;
+        }
+
+        // Fires the timers due by the deadline and counts down the rounds of the others
+        private void expireTimers(TimingWheel timingWheel, long deadline) {
+            Timer timer = head;
+            while (timer != null) {
+                Timer next;
+                if (timer.remainingRounds <= 0) {
+                    next = remove(timer);
+                    if (timer.deadline <= deadline) {
+                        timingWheel.pendingCount.decrementAndGet();
+                        timer.expire();
+                    } else {
+                        // Due later in this tick's time span; keep it rather than fire early
+                        timingWheel.place(timer);
+                    }
+                } else if (timer.isCancelled()) {
+                    next = remove(timer);
+                    timingWheel.pendingCount.decrementAndGet();
+                } else {
+                    timer.remainingRounds--;
+                    next = timer.next;
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * @param name      Name of the wheel's thread.
+     * @param tick      Length of one tick, which is also the timing resolution.
+     * @param unit      Unit of the tick.
+     * @param wheelSize Number of slots; rounded up to a power of two.
+     */
+    public TimingWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+        if (tick <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.min(wheelSize, 1 << 30));
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Slot();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to run once after a delay. The wheel's thread starts on first use.
+     *
+     * @return The timer, for cancelling.
+     */
+    public Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+        Timer timer = new Timer(this, task, deadline);
+        pendingCount.incrementAndGet();
+        pendingTimers.add(timer);
+        return timer;
+    }
+
+    /**
+     * @return The number of scheduled timers that have not fired or been removed yet.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the wheel's thread. Pending timers never fire.
+     */
+    public void stop() {
+        if (state.getAndSet(STOPPED) == NEW) {
+            started.countDown();
+        }
+    }
+
+    private void start() {
+        if (state.get() == NEW && state.compareAndSet(NEW, STARTED)) {
+            Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true); // Never keeps the application from exiting
+            thread.start();
+        }
+        try {
+            started.await(); // startTime is set by the wheel thread
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        startTime = System.nanoTime();
+        if (startTime == 0) {
+            startTime = 1; // 0 would read as not started
+        }
+        started.countDown();
+
+        while (state.get() == STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelledTimers();
+            transferPendingTimers();
+            wheel[(int) (tick & mask)].expireTimers(this, deadline);
+            tick++;
+        }
+    }
+
+    // Sleeps until the end of the current tick; returns that time, or -1 if the wheel was stopped
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long now = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - now + 999_999) / 1_000_000;
+            if (sleepMillis <= 0) {
+                return now;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (state.get() == STOPPED) {
+                    return -1;
+                }
+            }
+            if (state.get() == STOPPED) {
+                return -1;
+            }
+        }
+    }
+
+    private void removeCancelledTimers() {
+        Timer timer;
+        while ((timer = cancelledTimers.poll()) != null) {
+            if (timer.slot != null) {
+                timer.slot.remove(timer);
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferPendingTimers() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timer timer = pendingTimers.poll();
+            if (timer == null) {
+                return;
+            }
+            if (timer.isCancelled()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            place(timer);
+        }
+    }
+
+    private void place(Timer timer) {
+        long dueTick = timer.deadline / tickNanos;
+        timer.remainingRounds = (dueTick - tick) / wheel.length;
+        // A timer already due goes in the current slot so it fires this tick
+        long slotTick = Math.max(dueTick, tick);
+        wheel[(int) (slotTick & mask)].add(timer);
+    }
+}
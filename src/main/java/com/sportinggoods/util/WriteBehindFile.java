@@ -0,0 +1,314 @@
+package com.sportinggoods.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Write-behind persistence for a keyed CSV file.
+ * Changed rows are coalesced in memory by key and merged into the file in batches,
+ * either when enough rows are pending or when the flush interval elapses.
+ *
+ * Settings (system properties):
+ * - writeBehind.enabled: false writes every change through immediately (default true)
+ * - writeBehind.batchSize: pending rows that trigger a flush (default 64)
+ * - writeBehind.flushIntervalMs: longest time a change stays in memory only; this bounds
+ *   what a crash can lose (default 1000)
+ */
+public class WriteBehindFile {
+    /**
+     * Lets the owner of the file take part in a merge, e.g. to fold a journal into the rows.
+     * Pending rows are collected after beforeMerge returns, so anything the hook blocks
+     * until afterMerge cannot slip between the two.
+     */
+    public interface MergeHook {
+        /** Called with the rows read from the file, before pending rows are applied. */
+        void beforeMerge(Map<String, String> rows);
+
+        /** Called after the merge, with whether the file was replaced. Always called after beforeMerge. */
+        void afterMerge(boolean written);
+    }
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("writeBehind.enabled", "true"));
+    private static final int BATCH_SIZE = Integer.getInteger("writeBehind.batchSize", 64);
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("writeBehind.flushIntervalMs", 1000L);
+
+    private final String filePath;
+    private final String header;
+    private final Function<String, String> keyExtractor;
+    private final boolean writeBehind;
+    private final int batchSize;
+
+    private Map<String, String> dirtyRows = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+    private MergeHook mergeHook;
+
+    public WriteBehindFile(String filePath, String header, Function<String, String> keyExtractor) {
+        this(filePath, header, keyExtractor, ENABLED, BATCH_SIZE, FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * @param filePath      The CSV file to maintain.
+     * @param header        The header line written at the top of the file.
+     * @param keyExtractor  Returns the row key for a CSV line, or null for lines to drop.
+     * @param writeBehind   False to write each change through immediately.
+     * @param batchSize     Number of pending rows that triggers a flush.
+     * @param flushInterval Maximum time in milliseconds a change stays unflushed.
+     */
+    public WriteBehindFile(String filePath, String header, Function<String, String> keyExtractor,
+                           boolean writeBehind, int batchSize, long flushInterval) {
+        this.filePath = filePath;
+        this.header = header;
+        this.keyExtractor = keyExtractor;
+        this.writeBehind = writeBehind && flushInterval > 0;
+        this.batchSize = Math.max(1, batchSize);
+
+        if (this.writeBehind) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "write-behind-" + filePath);
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+        }
+    }
+
+    /**
+     * Records the latest content of a row. Later puts for the same key replace earlier ones.
+     *
+     * @param key  The row key.
+     * @param line The CSV line for the row.
+     */
+    public void put(String key, String line) {
+        int pending;
+        synchronized (this) {
+            dirtyRows.put(key, line);
+            pending = dirtyRows.size();
+        }
+        if (!writeBehind) {
+            flush();
+        } else if (pending >= batchSize) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * Records the latest content of several rows at once. The rows are queued together,
+     * so a flush writes either all of them or none.
+     *
+     * @param rows The CSV line for each row key; a null line drops the row.
+     */
+    public void putAll(Map<String, String> rows) {
+        int pending;
+        synchronized (this) {
+            dirtyRows.putAll(rows);
+            pending = dirtyRows.size();
+        }
+        if (!writeBehind) {
+            flush();
+        } else if (pending >= batchSize) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * Records that a row should be dropped from the file.
+     *
+     * @param key The row key.
+     */
+    public void remove(String key) {
+        put(key, null);
+    }
+
+    /**
+     * Appends rows to the end of the file straight away instead of merging them. Readers
+     * of the file must let a later line replace an earlier one with the same key, keeping
+     * the earlier one's place, as the merge does; the next merge folds the duplicates away.
+     * If the append fails, the rows are queued for the next merge instead.
+     *
+     * @param rows The CSV line for each row key.
+     * @return True if the rows were appended, false if they were queued.
+     */
+    public boolean appendAll(Map<String, String> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String line : rows.values()) {
+            if (lines.length() > 0) {
+                lines.append(System.lineSeparator());
+            }
+            lines.append(line);
+        }
+        synchronized (flushLock) {
+            // Held against merges, so an append never lands in a file about to be replaced
+            if (FileUtils.appendToFile(filePath, lines.toString())) {
+                synchronized (this) {
+                    dirtyRows.keySet().removeAll(rows.keySet()); // Older than what was just appended
+                }
+                return true;
+            }
+        }
+        putAll(rows);
+        return false;
+    }
+
+    /**
+     * Replaces the content of a row only if it is still waiting to be written.
+     * Used to keep a pending row current without scheduling a new write.
+     */
+    public synchronized void refresh(String key, String line) {
+        dirtyRows.replace(key, line);
+    }
+
+    public void setMergeHook(MergeHook mergeHook) {
+        this.mergeHook = mergeHook;
+    }
+
+    /**
+     * @return The number of rows waiting to be written.
+     */
+    public synchronized int getPendingCount() {
+        return dirtyRows.size();
+    }
+
+    /**
+     * Merges all pending rows into the file. Safe to call at any time, e.g. at shutdown.
+     */
+    public void flush() {
+        merge(false);
+    }
+
+    /**
+     * Rewrites the file even when no rows are pending, so the merge hook runs.
+     */
+    public void rewrite() {
+        merge(true);
+    }
+
+    /**
+     * Runs {@link #rewrite()} on the background flusher instead of the caller's thread.
+     */
+    public void requestRewrite() {
+        if (flusher != null) {
+            flusher.execute(this::rewrite);
+        } else {
+            rewrite();
+        }
+    }
+
+    /**
+     * Stops the background flusher after writing anything still pending.
+     */
+    public void close() {
+        flush();
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+    }
+
+    private void merge(boolean force) {
+        synchronized (flushLock) {
+            if (!force && getPendingCount() == 0) {
+                return;
+            }
+
+            // Load the existing rows, keeping file order
+            Map<String, String> rows = readRows();
+            if (rows == null) {
+                return;
+            }
+
+            if (mergeHook != null) {
+                mergeHook.beforeMerge(rows);
+            }
+            boolean written = false;
+            try {
+                Map<String, String> batch;
+                synchronized (this) {
+                    batch = dirtyRows;
+                    dirtyRows = new LinkedHashMap<>();
+                }
+                for (Map.Entry<String, String> row : batch.entrySet()) {
+                    if (row.getValue() == null) {
+                        rows.remove(row.getKey());
+                    } else {
+                        rows.put(row.getKey(), row.getValue());
+                    }
+                }
+                written = writeRows(rows);
+
+                if (!written) {
+                    // Keep the batch for the next attempt unless newer content arrived meanwhile
+                    synchronized (this) {
+                        batch.putAll(dirtyRows);
+                        dirtyRows = batch;
+                    }
+                }
+            } finally {
+                if (mergeHook != null) {
+                    mergeHook.afterMerge(written);
+                }
+            }
+        }
+    }
+
+    private Map<String, String> readRows() {
+        Map<String, String> rows = new LinkedHashMap<>();
+        File file = new File(filePath);
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line = reader.readLine(); // Skip the header
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue; // Skip empty lines
+                    String key = keyExtractor.apply(line);
+                    if (key != null) {
+                        rows.put(key, line);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + filePath);
+                return null;
+            }
+        }
+        return rows;
+    }
+
+    private boolean writeRows(Map<String, String> rows) {
+        // Write to a temporary file and swap it in so a crash never leaves a half-written file
+        Path target = Paths.get(filePath);
+        Path temp = Paths.get(filePath + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write(header);
+            writer.newLine();
+            for (String line : rows.values()) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + filePath);
+            return false;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                System.err.println("Error replacing file: " + filePath);
+                return false;
+            }
+        }
+        return true;
+    }
+}